@@ -0,0 +1,27 @@
+package bguspl.set.ex;
+
+/**
+ * The way a computer player chooses its key presses.
+ * Each computer player has its own strategy object, so strategies may keep per-player state.
+ */
+public interface AIStrategy {
+
+    /**
+     * Chooses the next slot the player presses.
+     * @param table        - the table.
+     * @param placedTokens - the slots the player already has tokens on.
+     * @return             - a slot with a card and without the player's token, or -1 if there is none to press now.
+     */
+    int nextSlot(Table table, boolean[] placedTokens);
+
+    /**
+     * Called when the dealer's verdict on the player's set is delivered, before the player starts a new set.
+     * @param verdict - 1 if the set was correct, 0 if it was wrong, -2 if it was invalidated.
+     */
+    void verdict(int verdict);
+
+    /**
+     * @return - the time the player takes to start a new set after a verdict, in milliseconds.
+     */
+    long reactionMillis();
+}
@@ -0,0 +1,285 @@
+package bguspl.set.ex;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import bguspl.set.UserInterface;
+
+/**
+ * A user interface that queues the calls made by the game threads and renders them on a dedicated thread,
+ * so rendering never runs inside a game lock or on the dealer's critical path.
+ * Redundant events are merged before rendering: a token placed and removed before it was rendered is dropped,
+ * and only the latest countdown and freeze values are rendered.
+ */
+public class AsyncUserInterface implements UserInterface {
+
+    /**
+     * The maximal number of ordered events waiting to be rendered.
+     */
+    public static final int CAPACITY = 1024;
+
+    /**
+     * The user interface that actually renders.
+     */
+    private final UserInterface ui;
+
+    /**
+     * The events that must be rendered in order (cards, tokens, scores).
+     */
+    private final ArrayDeque<Event> events;
+
+    /**
+     * The token placements that were not rendered yet, by player and slot.
+     */
+    private final Map<Long, Event> pendingTokens;
+
+    /**
+     * The latest freeze value of each player that was not rendered yet.
+     */
+    private final Map<Integer, Long> pendingFreezes;
+
+    /**
+     * The latest countdown that was not rendered yet.
+     */
+    private boolean hasCountdown;
+    private long countdownMillies;
+    private boolean countdownWarn;
+
+    /**
+     * The last countdown rendered, so repeated values are skipped.
+     */
+    private long renderedCountdown;
+    private boolean renderedWarn;
+
+    /**
+     * True iff the rendering thread is rendering events it took from the queue.
+     */
+    private boolean rendering;
+
+    /**
+     * True iff stop was called, after which the rendering thread exits.
+     */
+    private boolean stopped;
+
+    public AsyncUserInterface(UserInterface ui) {
+        this.ui = ui;
+        this.events = new ArrayDeque<Event>();
+        this.pendingTokens = new HashMap<Long, Event>();
+        this.pendingFreezes = new HashMap<Integer, Long>();
+        this.hasCountdown = false;
+        this.renderedCountdown = -1;
+        this.rendering = false;
+        this.stopped = false;
+
+        Thread renderer = new Thread(this::render, "ui-renderer");
+        renderer.setDaemon(true);
+        renderer.start();
+    }
+
+    @Override
+    public void placeCard(int card, int slot) {
+        enqueue(new Event(Event.PLACE_CARD, card, slot, 0));
+    }
+
+    @Override
+    public void removeCard(int slot) {
+        enqueue(new Event(Event.REMOVE_CARD, 0, slot, 0));
+    }
+
+    @Override
+    public synchronized void setCountdown(long millies, boolean warn) {
+        this.countdownMillies = millies;
+        this.countdownWarn = warn;
+        this.hasCountdown = true;
+        this.notifyAll();
+    }
+
+    @Override
+    public void setElapsed(long millies) {
+        enqueue(new Event(Event.SET_ELAPSED, 0, 0, millies));
+    }
+
+    @Override
+    public void setScore(int player, int score) {
+        enqueue(new Event(Event.SET_SCORE, player, score, 0));
+    }
+
+    @Override
+    public synchronized void setFreeze(int player, long millies) {
+        this.pendingFreezes.put(player, millies);
+        this.notifyAll();
+    }
+
+    @Override
+    public synchronized void placeToken(int player, int slot) {
+        Event event = new Event(Event.PLACE_TOKEN, player, slot, 0);
+        enqueue(event);
+        this.pendingTokens.put(tokenKey(player, slot), event);
+    }
+
+    @Override
+    public synchronized void removeToken(int player, int slot) {
+        Event placed = this.pendingTokens.remove(tokenKey(player, slot));
+        if (placed != null) { //the token was never rendered, so neither event needs to be
+            placed.cancelled = true;
+            return;
+        }
+        enqueue(new Event(Event.REMOVE_TOKEN, player, slot, 0));
+    }
+
+    @Override
+    public void removeTokens() {
+        enqueue(new Event(Event.REMOVE_TOKENS, 0, -1, 0));
+    }
+
+    @Override
+    public void removeTokens(int slot) {
+        enqueue(new Event(Event.REMOVE_TOKENS, 0, slot, 0));
+    }
+
+    @Override
+    public void announceWinner(int[] players) {
+        flush();
+        ui.announceWinner(players);
+    }
+
+    @Override
+    public void dispose() {
+        flush();
+        ui.dispose();
+    }
+
+    /**
+     * Waits until every queued event was rendered.
+     */
+    public synchronized void flush() {
+        while (!stopped && (!events.isEmpty() || hasCountdown || !pendingFreezes.isEmpty() || rendering)) {
+            try {
+                this.wait();
+            } catch (InterruptedException ignored) {}
+        }
+    }
+
+    /**
+     * Renders everything still queued and stops the rendering thread (called when the game ends).
+     */
+    public synchronized void stop() {
+        flush();
+        stopped = true;
+        this.notifyAll();
+    }
+
+    private static long tokenKey(int player, int slot) {
+        return ((long) player << 32) | slot;
+    }
+
+    /**
+     * Adds an ordered event, waiting if the queue is full.
+     */
+    private synchronized void enqueue(Event event) {
+        while (events.size() >= CAPACITY) {
+            try {
+                this.wait();
+            } catch (InterruptedException ignored) {}
+        }
+        events.addLast(event);
+        this.notifyAll();
+    }
+
+    /**
+     * The main loop of the rendering thread: takes all the waiting events at once and renders them outside the lock.
+     */
+    private void render() {
+        ArrayDeque<Event> batch = new ArrayDeque<Event>();
+        Map<Integer, Long> freezes = new HashMap<Integer, Long>();
+        while (true) {
+            boolean renderCountdown;
+            long millies;
+            boolean warn;
+            synchronized (this) {
+                rendering = false;
+                this.notifyAll(); //wakes flush() and producers waiting for space
+                while (events.isEmpty() && !hasCountdown && pendingFreezes.isEmpty()) {
+                    if (stopped) return;
+                    try {
+                        this.wait();
+                    } catch (InterruptedException ignored) {}
+                }
+                rendering = true;
+                batch.addAll(events);
+                events.clear();
+                for (Event event : batch) {
+                    if (event.type == Event.PLACE_TOKEN)
+                        pendingTokens.remove(tokenKey(event.first, event.second), event);
+                }
+                freezes.putAll(pendingFreezes);
+                pendingFreezes.clear();
+                millies = countdownMillies;
+                warn = countdownWarn;
+                renderCountdown = hasCountdown && (millies != renderedCountdown || warn != renderedWarn);
+                hasCountdown = false;
+                this.notifyAll();
+            }
+
+            for (Event event : batch) {
+                if (!event.cancelled)
+                    event.render(ui);
+            }
+            batch.clear();
+            for (Iterator<Map.Entry<Integer, Long>> it = freezes.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<Integer, Long> freeze = it.next();
+                ui.setFreeze(freeze.getKey(), freeze.getValue());
+                it.remove();
+            }
+            if (renderCountdown) {
+                ui.setCountdown(millies, warn);
+                renderedCountdown = millies;
+                renderedWarn = warn;
+            }
+        }
+    }
+
+    /**
+     * A user interface call waiting to be rendered.
+     */
+    private static class Event {
+        static final int PLACE_CARD = 0;
+        static final int REMOVE_CARD = 1;
+        static final int PLACE_TOKEN = 2;
+        static final int REMOVE_TOKEN = 3;
+        static final int REMOVE_TOKENS = 4;
+        static final int SET_SCORE = 5;
+        static final int SET_ELAPSED = 6;
+
+        final int type;
+        final int first;
+        final int second;
+        final long value;
+        boolean cancelled;
+
+        Event(int type, int first, int second, long value) {
+            this.type = type;
+            this.first = first;
+            this.second = second;
+            this.value = value;
+            this.cancelled = false;
+        }
+
+        void render(UserInterface ui) {
+            switch (type) {
+                case PLACE_CARD: ui.placeCard(first, second); break;
+                case REMOVE_CARD: ui.removeCard(second); break;
+                case PLACE_TOKEN: ui.placeToken(first, second); break;
+                case REMOVE_TOKEN: ui.removeToken(first, second); break;
+                case REMOVE_TOKENS:
+                    if (second < 0) ui.removeTokens();
+                    else ui.removeTokens(second);
+                    break;
+                case SET_SCORE: ui.setScore(first, second); break;
+                case SET_ELAPSED: ui.setElapsed(value); break;
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package bguspl.set.ex;
+
+import java.util.Arrays;
+
+import bguspl.set.Env;
+
+/**
+ * This class holds the features of every card in the deck, decoded once per config.
+ * It is used to validate sets and to find the card that completes two given cards into a legal set.
+ */
+public class CardFeatures {
+
+    /**
+     * The number of features each card has.
+     */
+    private final int featureCount;
+
+    /**
+     * The number of possible values of each feature.
+     */
+    private final int featureSize;
+
+    /**
+     * The features of each card id.
+     */
+    protected final int[][] features;
+
+    /**
+     * Mapping between a features encoding and the card id having these features (-1 if none).
+     */
+    private final int[] keyToCard;
+
+    /**
+     * The card completing each pair of cards into a legal set, indexed by first * deckSize + second
+     * (-1 if none, null if features don't have 3 values).
+     */
+    private final int[] pairToThird;
+
+    /**
+     * The number of cards in the deck.
+     */
+    private final int deckSize;
+
+    public CardFeatures(Env env) {
+        this.featureCount = env.config.featureCount;
+        this.featureSize = env.config.featureSize;
+        this.deckSize = env.config.deckSize;
+        this.features = new int[deckSize][];
+
+        int keys = 1;
+        for (int i = 0; i < featureCount; i++)
+            keys *= featureSize;
+        this.keyToCard = new int[keys];
+        Arrays.fill(keyToCard, -1);
+
+        for (int card = 0; card < features.length; card++) {
+            features[card] = env.util.cardToFeatures(card);
+            keyToCard[key(features[card])] = card;
+        }
+
+        if (hasUniqueThirdCard()) {
+            this.pairToThird = new int[deckSize * deckSize];
+            for (int first = 0; first < deckSize; first++)
+                for (int second = 0; second < deckSize; second++)
+                    pairToThird[first * deckSize + second] = computeThirdCard(first, second);
+        }
+        else {
+            this.pairToThird = null;
+        }
+    }
+
+    /**
+     * Encodes the features of a card as a single number.
+     * @param cardFeatures - the features of the card.
+     * @return             - the encoding of the features.
+     */
+    private int key(int[] cardFeatures) {
+        int key = 0;
+        for (int i = featureCount - 1; i >= 0; i--)
+            key = key * featureSize + cardFeatures[i];
+        return key;
+    }
+
+    /**
+     * @return - true iff any two cards are completed into a set by exactly one card (i.e. features have 3 values).
+     */
+    public boolean hasUniqueThirdCard() {
+        return featureSize == 3;
+    }
+
+    /**
+     * Finds the card that completes two cards into a legal set.
+     * @param first  - the first card id.
+     * @param second - the second card id.
+     * @return       - the completing card id, or -1 if there is no single such card in the deck.
+     */
+    public int thirdCard(int first, int second) {
+        if (pairToThird == null) return -1;
+        return pairToThird[first * deckSize + second];
+    }
+
+    private int computeThirdCard(int first, int second) {
+        if (first == second) return -1;
+        int key = 0;
+        for (int i = featureCount - 1; i >= 0; i--) {
+            int a = features[first][i];
+            int b = features[second][i];
+            key = key * 3 + (a == b ? a : 3 - a - b);
+        }
+        return keyToCard[key];
+    }
+
+    /**
+     * Checks if three cards form a legal set, i.e. every feature is either all same or all different.
+     * @return - true iff the cards form a legal set.
+     */
+    public boolean isSet(int first, int second, int third) {
+        if (pairToThird != null)
+            return pairToThird[first * deckSize + second] == third;
+        if (first == second || first == third || second == third) return false;
+        for (int i = 0; i < featureCount; i++) {
+            int a = features[first][i];
+            int b = features[second][i];
+            int c = features[third][i];
+            boolean allSame = a == b && b == c;
+            boolean allDifferent = a != b && b != c && a != c;
+            if (!allSame && !allDifferent) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the given cards form a legal set, without allocating.
+     * @param cards - the card ids.
+     * @return      - true iff the cards form a legal set.
+     */
+    public boolean testSet(int[] cards) {
+        return cards.length == 3 && isSet(cards[0], cards[1], cards[2]);
+    }
+}
@@ -3,10 +3,8 @@ package bguspl.set.ex;
 import bguspl.set.Env;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.Random;
 
 /**
  * This class manages the dealer's threads and data
@@ -25,9 +23,42 @@ public class Dealer implements Runnable {
     private final Player[] players;
 
     /**
-     * The list of card ids that are left in the dealer's deck.
+     * The card ids that are left in the dealer's deck. Drawn at random; the source of randomness is seeded
+     * from the bguspl.deck.seed system property if set, and can be replaced with Deck.setRandom.
      */
-    private final List<Integer> deck;
+    final Deck deck; //package-private so a harness can seed it
+
+    /**
+     * Chooses the cards placed on the table. By default a legal set is dealt whenever the deck allows it.
+     */
+    DealingPolicy dealing; //package-private so a harness can replace it
+
+    /**
+     * Answers whether the cards still in the game (deck and table) contain a legal set.
+     */
+    private final DeckOracle deckOracle;
+
+    /**
+     * The slots whose cards were taken by legal sets in the batch being judged.
+     */
+    private final boolean[] claimedSlots;
+
+    /**
+     * Buffers of the cards and slots passed to the table's batch operations.
+     */
+    private final int[] batchCards;
+    private final int[] batchSlots;
+
+    /**
+     * The submitted sets taken from the queue for judging, reused between batches.
+     */
+    private final List<LinkPlayerSet> batch;
+
+    /**
+     * The sets of the batch judged correct, and those invalidated, until their verdicts are delivered (reused as well).
+     */
+    private final List<LinkPlayerSet> correctSets;
+    private final List<LinkPlayerSet> invalidatedSets;
 
     /**
      * True iff game should be terminated.
@@ -54,7 +85,16 @@ public class Dealer implements Runnable {
         this.table = table;
         this.players = players;
         // this.gameStart = true; //hazilon changed
-        deck = IntStream.range(0, env.config.deckSize).boxed().collect(Collectors.toList());
+        Long seed = Long.getLong("bguspl.deck.seed");
+        deck = new Deck(env.config.deckSize, seed == null ? new Random() : new Random(seed));
+        dealing = new SetGuaranteeingDealing();
+        deckOracle = new DeckOracle(table.cardFeatures, env.config.deckSize);
+        claimedSlots = new boolean[table.slotToCard.length];
+        batchCards = new int[table.slotToCard.length];
+        batchSlots = new int[table.slotToCard.length];
+        batch = new ArrayList<LinkPlayerSet>();
+        correctSets = new ArrayList<LinkPlayerSet>();
+        invalidatedSets = new ArrayList<LinkPlayerSet>();
     }
 
     /**
@@ -63,33 +103,45 @@ public class Dealer implements Runnable {
     @Override
     public void run() {
         env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
+        this.table.metrics.start();
         createAndRunPlayerThreads(); //EY new
 
         while (!shouldFinish()) {
             placeCardsOnTable();
-            this.table.hints(); //EYTODO delete later
+            if (env.config.hints) this.table.hints();
             timerLoop();
             updateTimerDisplay(true);
             removeAllCardsFromTable();
         }    //NEYA MODIFIED
 
-        if (env.util.findSets(deck, 1).size() == 0) {//in case game ends when there are no more potential sets available
-            System.out.println("No more sets found - GAME ENDS");
+        if (!deckOracle.hasSet()) {//in case game ends when there are no more potential sets available
+            env.logger.info("No more sets found - GAME ENDS");
             terminate();
         }
         announceWinners();
+        this.table.ui.stop(); //everything was rendered, the game's rendering thread is no longer needed
+        this.table.metrics.stop();
+        this.table.journal.close(env.logger);
+        env.logger.info(this.table.metrics.dump());
         env.logger.info("thread " + Thread.currentThread().getName() + " terminated.");
     }
 
     /**
-     * The inner loop of the dealer thread that runs as long as the countdown did not time out.
+     * The inner loop of the dealer thread that runs as long as the countdown did not time out
+     * and there is a legal set on the table. A table with no set is reshuffled right away.
      */
     private void timerLoop() {
         while (!terminate && System.currentTimeMillis() < reshuffleTime) {
+            if(!this.table.hasSet()){ //O(1): the table keeps an index of its sets
+                env.logger.fine("no set on the table, reshuffling");
+                return;
+            }
             sleepUntilWokenOrTimeout();
+            long iterationStart = System.nanoTime();
             updateTimerDisplay(false);
             removeCardsFromTable();
             placeCardsOnTable();
+            this.table.metrics.dealerIteration.record(System.nanoTime() - iterationStart);
         }
     }
 
@@ -100,6 +152,7 @@ public class Dealer implements Runnable {
         for (int i = 0; i < players.length; i++){
             Player a = players[i];
             Thread playerThread = new Thread(a);
+            a.playerThread = playerThread; //before it starts, so a game that ends right away can still join it
             playerThread.start();
         }
     }
@@ -110,9 +163,14 @@ public class Dealer implements Runnable {
     public void terminate() { //NEYA ADDED
         // TODO implement
         for (Player p: this.players){
-            p.terminate();
+            try{
+                p.terminate();
+            } catch (RuntimeException e){ //the other players must still be terminated, or their threads keep the game alive
+                env.logger.warning("could not terminate player " + p.id + ": " + e);
+            }
         }
         this.terminate = true;
+        this.table.finishedPlayerSets.wakeUp(); //don't wait for the next countdown tick
     }
 
     /**
@@ -121,91 +179,113 @@ public class Dealer implements Runnable {
      * @return true iff the game should be finished.
      */
     private boolean shouldFinish() {
-        return terminate || env.util.findSets(deck, 1).size() == 0;
+        return terminate || !deckOracle.hasSet();
     }
 
     /**
      * Checks cards should be removed from the table and removes them.
+     * Each set was already validated by its player, so judging only checks the set is still current.
+     * All the pending sets are taken at once and judged in arrival order: a set built from a slot whose card
+     * changed since, or was taken by an earlier set in the batch, is invalidated. Cards and tokens are then
+     * removed once for the batch; sets submitted meanwhile with the removed cards are rejected when taken.
      */
-    private void removeCardsFromTable() {
-        // TODO implement
-        // this.table.hints(); //EYTODO delete later
-
-        while(!this.table.finishedPlayerSets.isEmpty()){ //TODO was if(...). make sure it works. also was .isEmpty()
-            LinkPlayerSet removedLink = this.table.finishedPlayerSets.removeFirst(); //hazilon
-            int[] cardsSet = removedLink.cards;
-            Player player = removedLink.player;
-            boolean success = this.env.util.testSet(cardsSet);
-            if(success){
-                this.table.tableReady = false;
-                System.out.println("success!");
-                for(int card: cardsSet){
-                    if(this.table.cardToSlot[card]!=null){
-                        int slot = this.table.cardToSlot[card];
-                        ThreadSafeList slotObj = this.table.getSlot(slot);
-                        int[] playersWithToken = slotObj.getPlayers();
-                        for(int playerToReturn : playersWithToken){ //first returning tokens to players
-                            Player currPlayer = this.players[playerToReturn];
-                            currPlayer.tokensLeft++;
-                            // System.out.println("removed card from slot: "+ slot +" for player: "+currPlayer.id +" tokens left: "+currPlayer.tokensLeft);
-                            currPlayer.placed_tokens[slot]=false;
-                            
-                            //TODO also need to check if players with finished alleged set had cards who got just deleted. if so, remove their set and give them 3 tokens and status 1
-                            if(currPlayer.status==2 && currPlayer.id != player.id && currPlayer.wasCorrect!=-2){ //another player who had just finished
-                                System.out.println("player failed to make set: "+currPlayer.id);
-                                this.table.finishedPlayerSets.remove(currPlayer.playerSingleLink);
-                                currPlayer.wasCorrect = -2;
-                            }
-                        }
-                        slotObj.removeAll();
-                        this.table.removeCard(slot);
-                    }
+    void removeCardsFromTable() { //package-private for the benchmarks
+        List<LinkPlayerSet> batch = this.batch;
+        batch.clear();
+        if(this.table.finishedPlayerSets.drainTo(batch)==0) return;
+        this.table.metrics.queueDepth.record(batch.size());
+
+        List<LinkPlayerSet> correctSets = this.correctSets;
+        List<LinkPlayerSet> invalidatedSets = this.invalidatedSets;
+        correctSets.clear();
+        invalidatedSets.clear();
+        boolean anyClaimed = false;
+        for(LinkPlayerSet link: batch){
+            if(!this.isCurrentAndUnclaimed(link)){ //one of the cards was replaced, or taken by an earlier set
+                this.table.journal.verdict(link.player.id, -2);
+                invalidatedSets.add(link);
+            }
+            else if(link.legal){ //validated by the player when the set was built
+                this.table.journal.verdict(link.player.id, 1);
+                for(int slot: link.slots){
+                    this.claimedSlots[slot] = true;
                 }
-                this.updateTimerDisplay(true);
-                player.wasCorrect = 1; //indicates the player to activate point() on itself
-                // this.table.hints(); //EYTODO delete later 
+                anyClaimed = true;
+                correctSets.add(link);
             }
             else{
-                for(int card: cardsSet){
-                    if(this.table.cardToSlot[card]!=null){
-                        int slot = this.table.cardToSlot[card];
-                        ThreadSafeList slotObj = this.table.getSlot(slot);
-                        slotObj.remove(player.id);
+                this.table.journal.verdict(link.player.id, 0);
+                for(int slot: link.slots){
+                    this.table.getSlot(slot).remove(link.player.id);
+                }
+                link.deliverVerdict(0); //indicates the player to activate penalty() on itself
+            }
+        }
+
+        if(anyClaimed){ //the table stays not ready until placeCardsOnTable refills the slots
+            this.table.setTableReady(false);
+            for(int slot=0; slot<this.claimedSlots.length; slot++){
+                if(!this.claimedSlots[slot]) continue;
+                ThreadSafeList slotObj = this.table.getSlot(slot);
+                for(int word=0; word<slotObj.words(); word++){ //first returning tokens to players
+                    for(long playersWithToken = slotObj.getPlayers(word); playersWithToken != 0; playersWithToken &= playersWithToken - 1){
+                        Player currPlayer = this.players[(word << 6) + Long.numberOfTrailingZeros(playersWithToken)];
+                        currPlayer.tokensLeft++;
+                        currPlayer.placed_tokens[slot]=false;
                     }
                 }
-                player.wasCorrect = 0; //indicates the player to activate penalty() on itself
+                slotObj.removeAll();
+            }
+            int count = 0;
+            for(int slot=0; slot<this.claimedSlots.length; slot++){
+                if(!this.claimedSlots[slot]) continue;
+                this.claimedSlots[slot] = false;
+                this.deckOracle.removeCard(this.table.slotToCard[slot]); //the card leaves the game
+                this.batchSlots[count++] = slot;
             }
-            synchronized(this.table.playersLocker){
-                this.table.playersLocker.notifyAll(); //the first player from finishedPlayersCards got point/penalty, will change status so won't lock again. the players who weren't handled but are in the list will lock again
-                // System.out.println("dealer did notifyall on lock");
+            this.table.removeCards(this.batchSlots, count);
+            this.updateTimerDisplay(true);
+            for(LinkPlayerSet link: correctSets){
+                env.logger.fine(() -> "success! player: " + link.player.id);
+                link.deliverVerdict(1); //indicates the player to activate point() on itself
             }
         }
-        this.table.tableReady = true;
+
+        for(LinkPlayerSet link: invalidatedSets){
+            env.logger.fine(() -> "player failed to make set: "+link.player.id);
+            link.deliverVerdict(-2); //wakes only that player
+        }
     }
 
     /**
-     * Check if any cards can be removed from the deck and placed on the table.
+     * @param link - a submitted set.
+     * @return     - true iff none of the set's slots changed since it was built, and none was taken by an earlier set in the batch.
      */
-    private void placeCardsOnTable() {
-        this.dealerShuffle();
-        for(int slot=0;slot<12 && !deck.isEmpty();slot++){
-            if(table.slotToCard[slot]==null){
-                table.placeCard(deck.remove(0), slot);
-            }
+    private boolean isCurrentAndUnclaimed(LinkPlayerSet link) {
+        for(int i=0; i<link.slots.length; i++){
+            int slot = link.slots[i];
+            if(link.cards[i] < 0 || this.table.slotEpochs[slot] != link.epochs[i] || this.claimedSlots[slot]) return false;
         }
+        return true;
     }
 
     /**
-     * shuffles the deck
+     * Check if any cards can be removed from the deck and placed on the table.
      */
-    private void dealerShuffle() { //EYTODO new
-        if(!deck.isEmpty()){
-            Collections.shuffle(deck); 
+    private void placeCardsOnTable() {
+        int count = 0;
+        for(int slot=0;slot<table.slotToCard.length && count<deck.size();slot++){
+            if(table.slotToCard[slot]==-1){
+                batchSlots[count] = slot;
+                count++;
+            }
         }
+        this.dealing.deal(this.table, this.deck, batchSlots, batchCards, count);
+        table.placeCards(batchCards, batchSlots, count); //all the empty slots are filled in one step
     }
-    
+
     /**
-     * Sleep for a fixed amount of time or until the thread is awakened for some purpose.
+     * Sleep until a set is submitted, the countdown display should change, or the reshuffle time is reached.
      */
     private void sleepUntilWokenOrTimeout() {
         // TODO implement
@@ -213,9 +293,16 @@ public class Dealer implements Runnable {
             this.reshuffleTime = System.currentTimeMillis() + (env.config.turnTimeoutMillis + 1000); //EY: dont change!
         }
 
+        long timeLeft = this.reshuffleTime - System.currentTimeMillis();
+        if (timeLeft <= 0) return;
+        long untilNextTick = timeLeft % 1000; //the countdown display changes once per whole second
+        if (untilNextTick == 0) untilNextTick = 1000;
+
+        TimerWheel.Timeout tick = this.table.timer.schedule(Math.min(untilNextTick, timeLeft), this.table.finishedPlayerSets::wakeUp);
         try {
-            Thread.sleep(100); //EYTODO maybe change
+            this.table.finishedPlayerSets.awaitNonEmpty(); //a submitted set wakes us right away
         } catch (InterruptedException ignored) {}
+        tick.cancel();
 
     }
 
@@ -233,45 +320,46 @@ public class Dealer implements Runnable {
             long timeInSeconds = timer / 1000;
             timer = timeInSeconds * 1000;
             if((timer) <= this.env.config.turnTimeoutWarningMillis){
-                env.ui.setCountdown(timer, true);
+                this.table.ui.setCountdown(timer, true);
             }
             else{
-                env.ui.setCountdown(timer, false);
+                this.table.ui.setCountdown(timer, false);
             }
         }
-        if(this.table.tableReady==false){
-            this.table.tableReady=true;
-        }
     }
 
     /**
      * Returns all the cards from the table to the deck.
      */
-    private void removeAllCardsFromTable() {
+    void removeAllCardsFromTable() { //package-private for the tests
         // TODO implement
-        this.table.tableReady = false;
+        this.table.setTableReady(false);
+        this.table.journal.reshuffle();
 
         this.table.finishedPlayerSets.removeAll(); //all attempts at sets will be removed //TODO maybe change?
 
-        for(int slot=0;slot<12;slot++){
-            if(table.slotToCard[slot]!=null){
-                deck.add(table.slotToCard[slot]);
-                table.removeCard(slot);
+        int count = 0;
+        for(int slot=0;slot<table.slotToCard.length;slot++){
+            if(table.slotToCard[slot]!=-1){
+                batchCards[count] = table.slotToCard[slot];
+                batchSlots[count++] = slot;
             }
         }
+        table.removeCards(batchSlots, count); //the whole table is cleared in one step
+        deck.addAll(batchCards, count);
 
         for(Player player:players){
             player.commandsQueue.Clear();
             player.tokensLeft = 3;
-            player.placed_tokens = new boolean[12];
+            player.placed_tokens = new boolean[table.slotToCard.length];
             player.status = 1;
-            player.wasCorrect = -2;
+            player.playerSingleLink.invalidate(); //wakes the player if its set was waiting for a verdict
 
-            System.out.println("player resetted: "+player.id);
         }
 
         this.table.removeAllTokens();
-        System.out.println("removed all cards from table");
+        this.table.metrics.reshuffles.increment();
+        env.logger.fine("removed all cards from table");
     }
 
     /**
@@ -295,7 +383,7 @@ public class Dealer implements Runnable {
         }
 
         int[] winPlayers = winners.stream().mapToInt(i -> i).toArray();
-        env.ui.announceWinner(winPlayers);
+        this.table.ui.announceWinner(winPlayers); //renders everything still queued first
 
     }
 }
@@ -0,0 +1,17 @@
+package bguspl.set.ex;
+
+/**
+ * Chooses the cards the dealer places in the empty slots of the table.
+ */
+public interface DealingPolicy {
+
+    /**
+     * Draws the cards for the empty slots from the deck.
+     * @param table - the table, before the cards are placed.
+     * @param deck  - the deck to draw from, holding at least count cards.
+     * @param slots - the empty slots to fill, in slots[0..count).
+     * @param cards - filled with the card to place in each of the slots.
+     * @param count - the number of slots to fill.
+     */
+    void deal(Table table, Deck deck, int[] slots, int[] cards, int count);
+}
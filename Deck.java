@@ -0,0 +1,123 @@
+package bguspl.set.ex;
+
+import java.util.Random;
+
+/**
+ * The dealer's deck: the card ids not in play, kept in a primitive array.
+ * Each draw takes a random card with one step of a Fisher-Yates shuffle, so drawing is O(1)
+ * and the deck never has to be shuffled as a whole. Cards returned to the deck are appended in bulk.
+ * The position of every card is tracked, so a specific card can be looked up and taken in O(1) as well.
+ */
+public class Deck {
+
+    /**
+     * The cards in the deck, in cards[0..size).
+     */
+    private final int[] cards;
+    private int size;
+
+    /**
+     * The index of each card in cards (-1 if the card is not in the deck).
+     */
+    private final int[] position;
+
+    /**
+     * The source of randomness of the draws. Seed it to deal the same cards in the same order.
+     */
+    private Random random;
+
+    /**
+     * Creates a deck holding all the cards.
+     * @param deckSize - the number of cards.
+     * @param random   - the source of randomness of the draws.
+     */
+    public Deck(int deckSize, Random random) {
+        this.cards = new int[deckSize];
+        this.position = new int[deckSize];
+        for (int card = 0; card < deckSize; card++) {
+            cards[card] = card;
+            position[card] = card;
+        }
+        this.size = deckSize;
+        this.random = random;
+    }
+
+    /**
+     * Replaces the source of randomness of the draws.
+     * @param random - the new source, e.g. a seeded Random for a reproducible game.
+     */
+    public void setRandom(Random random) {
+        this.random = random;
+    }
+
+    /**
+     * Draws a random card from the deck.
+     * @return - the card drawn.
+     * @pre    - the deck is not empty.
+     */
+    public int draw() {
+        return removeAt(random.nextInt(size));
+    }
+
+    /**
+     * @return - a random index between 0 and size() - 1, from the deck's source of randomness.
+     * @pre    - the deck is not empty.
+     */
+    public int randomIndex() {
+        return random.nextInt(size);
+    }
+
+    /**
+     * Takes a specific card from the deck.
+     * @param card - the card to take.
+     * @pre        - the card is in the deck.
+     */
+    public void take(int card) {
+        removeAt(position[card]);
+    }
+
+    private int removeAt(int i) {
+        int card = cards[i];
+        int last = cards[--size];
+        cards[i] = last; //the last card fills the gap
+        position[last] = i;
+        position[card] = -1;
+        return card;
+    }
+
+    /**
+     * @param card - a card id.
+     * @return     - true iff the card is in the deck.
+     */
+    public boolean contains(int card) {
+        return position[card] != -1;
+    }
+
+    /**
+     * @param i - an index between 0 and size() - 1.
+     * @return  - the card at the index (the order of the cards is arbitrary).
+     */
+    public int cardAt(int i) {
+        return cards[i];
+    }
+
+    /**
+     * Returns cards to the deck.
+     * @param returned - the cards to return.
+     * @param count    - the number of cards to return, from the start of the array.
+     */
+    public void addAll(int[] returned, int count) {
+        for (int i = 0; i < count; i++) {
+            position[returned[i]] = size;
+            cards[size++] = returned[i];
+        }
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,99 @@
+package bguspl.set.ex;
+
+/**
+ * This class answers whether the cards still in the game (deck and table) contain a legal set.
+ * Cards that leave the game are removed one by one, and the last set found is kept as a witness
+ * so the search only runs again once one of its cards has left the game.
+ */
+public class DeckOracle {
+
+    /**
+     * The features of all the cards.
+     */
+    private final CardFeatures cardFeatures;
+
+    /**
+     * Bitset of the card ids that are still in the game.
+     */
+    private final long[] inGame;
+
+    /**
+     * A legal set whose cards are all still in the game (null if unknown).
+     */
+    private int[] witness;
+
+    public DeckOracle(CardFeatures cardFeatures, int deckSize) {
+        this.cardFeatures = cardFeatures;
+        this.inGame = new long[(deckSize + 63) >>> 6];
+        for (int card = 0; card < deckSize; card++)
+            inGame[card >>> 6] |= 1L << card;
+        this.witness = null;
+    }
+
+    /**
+     * Marks a card as out of the game (i.e. it was taken by a legal set).
+     * @param card - the card id.
+     */
+    public void removeCard(int card) {
+        inGame[card >>> 6] &= ~(1L << card);
+        if (witness != null && (witness[0] == card || witness[1] == card || witness[2] == card))
+            witness = null;
+    }
+
+    /**
+     * @param card - the card id.
+     * @return     - true iff the card is still in the game.
+     */
+    public boolean contains(int card) {
+        return card >= 0 && (inGame[card >>> 6] & (1L << card)) != 0;
+    }
+
+    /**
+     * @return - true iff the cards still in the game contain at least one legal set.
+     */
+    public boolean hasSet() {
+        if (witness == null)
+            witness = findSet();
+        return witness != null;
+    }
+
+    /**
+     * Searches the cards in the game for a legal set, stopping at the first one found.
+     * @return - the card ids of the set found, or null if there is none.
+     */
+    private int[] findSet() {
+        for (int first = nextCard(0); first >= 0; first = nextCard(first + 1)) {
+            for (int second = nextCard(first + 1); second >= 0; second = nextCard(second + 1)) {
+                if (cardFeatures.hasUniqueThirdCard()) {
+                    int third = cardFeatures.thirdCard(first, second);
+                    if (third > second && contains(third)) //counts each set only from its two smallest cards
+                        return new int[]{first, second, third};
+                }
+                else {
+                    for (int third = nextCard(second + 1); third >= 0; third = nextCard(third + 1)) {
+                        if (cardFeatures.isSet(first, second, third))
+                            return new int[]{first, second, third};
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param from - the smallest card id to look at.
+     * @return     - the smallest card id in the game that is at least from, or -1 if there is none.
+     */
+    private int nextCard(int from) {
+        int word = from >>> 6;
+        if (word >= inGame.length) return -1;
+        long bits = inGame[word] & (-1L << from);
+        while (true) {
+            if (bits != 0)
+                return (word << 6) + Long.numberOfTrailingZeros(bits);
+            if (++word == inGame.length)
+                return -1;
+            bits = inGame[word];
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package bguspl.set.ex;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+
+/**
+ * An append-only binary journal of a single game's events, written to a memory-mapped file.
+ * Recording an event reserves a fixed-size entry with one atomic add and writes it in place, with no locks,
+ * allocation or system calls (the file is mapped in segments, and a new segment is mapped once per ENTRIES_PER_SEGMENT events).
+ * Journaling is enabled by the bguspl.journal.dir system property, which names the directory the journals are written to;
+ * otherwise every record call returns right away. See GameReplay for reading a journal back.
+ *
+ * The file starts with a header entry (see writeHeader), followed by the events in the order they were recorded.
+ * Each entry is ENTRY_BYTES long: the System.nanoTime() of the event, the player, three arguments and the event type,
+ * which is written last so a reader stops at the first entry that was not completely written.
+ */
+public class GameJournal {
+
+    /**
+     * The directory journals are written to, or null if journaling is disabled.
+     */
+    public static final String DIR = System.getProperty("bguspl.journal.dir");
+
+    /**
+     * The event types. 0 marks the end of the journal.
+     */
+    public static final int CARD_PLACED = 1;
+    public static final int CARD_REMOVED = 2;
+    public static final int TOKEN_PLACED = 3;
+    public static final int TOKEN_REMOVED = 4;
+    public static final int SET_SUBMITTED = 5;
+    public static final int VERDICT = 6;
+    public static final int RESHUFFLE = 7;
+
+    /**
+     * Identifies a journal file (the first int of the header).
+     */
+    public static final int MAGIC = 0x5345544A; //"SETJ"
+    public static final int VERSION = 1;
+
+    public static final int ENTRY_BYTES = 32;
+    public static final int ENTRIES_PER_SEGMENT = 1 << 19;
+    private static final long SEGMENT_BYTES = (long) ENTRIES_PER_SEGMENT * ENTRY_BYTES;
+    private static final int MAX_SEGMENTS = 256;
+    private static final long MAX_ENTRIES = (long) MAX_SEGMENTS * ENTRIES_PER_SEGMENT;
+
+    /**
+     * A journal that records nothing.
+     */
+    public static final GameJournal DISABLED = new GameJournal();
+
+    private static final AtomicInteger nextGame = new AtomicInteger();
+
+    private final boolean enabled;
+    private final FileChannel channel;
+    private final AtomicReferenceArray<MappedByteBuffer> segments;
+
+    /**
+     * The number of entries reserved so far, including the header.
+     */
+    private final AtomicLong entries;
+
+    /**
+     * The number of events dropped because the journal reached its maximal size.
+     */
+    protected final LongAdder dropped;
+
+    private GameJournal() {
+        this.enabled = false;
+        this.channel = null;
+        this.segments = null;
+        this.entries = null;
+        this.dropped = new LongAdder();
+    }
+
+    private GameJournal(FileChannel channel) throws IOException {
+        this.enabled = true;
+        this.channel = channel;
+        this.segments = new AtomicReferenceArray<MappedByteBuffer>(MAX_SEGMENTS);
+        this.entries = new AtomicLong();
+        this.dropped = new LongAdder();
+        segments.set(0, map(0));
+    }
+
+    /**
+     * Opens a journal for a new game if journaling is enabled.
+     * @param env - the game environment.
+     * @return    - a journal written to the next game-N.journal file of the journal directory, or DISABLED.
+     */
+    public static GameJournal open(Env env) {
+        if (DIR == null) return DISABLED;
+        File file = new File(DIR, "game-" + nextGame.getAndIncrement() + ".journal");
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            raf.setLength(0);
+            GameJournal journal = new GameJournal(raf.getChannel());
+            journal.writeHeader(env.config);
+            env.logger.info("journaling the game to " + file);
+            return journal;
+        } catch (IOException e) {
+            env.logger.warning("could not open the game journal " + file + ": " + e);
+            return DISABLED;
+        }
+    }
+
+    /**
+     * The header holds what a replay needs to rebuild the game: the table's rows and columns, the number of players,
+     * and the number and size of the card features.
+     */
+    private void writeHeader(Config config) {
+        MappedByteBuffer segment = segments.get(0);
+        entries.set(1);
+        segment.putInt(4, VERSION);
+        segment.putInt(8, config.rows);
+        segment.putInt(12, config.columns);
+        segment.putInt(16, config.players);
+        segment.putInt(20, config.featureCount);
+        segment.putInt(24, config.featureSize);
+        segment.putInt(0, MAGIC);
+    }
+
+    private MappedByteBuffer map(int segment) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, segment * SEGMENT_BYTES, SEGMENT_BYTES);
+        buffer.order(ByteOrder.nativeOrder());
+        return buffer;
+    }
+
+    /**
+     * @return - true iff events are recorded.
+     */
+    public boolean enabled() {
+        return enabled;
+    }
+
+    public void cardPlaced(int card, int slot) {
+        if (enabled) append(CARD_PLACED, -1, card, slot, 0);
+    }
+
+    public void cardRemoved(int card, int slot) {
+        if (enabled) append(CARD_REMOVED, -1, card, slot, 0);
+    }
+
+    public void tokenPlaced(int player, int slot) {
+        if (enabled) append(TOKEN_PLACED, player, slot, 0, 0);
+    }
+
+    public void tokenRemoved(int player, int slot) {
+        if (enabled) append(TOKEN_REMOVED, player, slot, 0, 0);
+    }
+
+    /**
+     * @param cards - the 3 cards of the set (-1 for a card that was already taken).
+     */
+    public void setSubmitted(int player, int[] cards) {
+        if (enabled) append(SET_SUBMITTED, player, cards[0], cards[1], cards[2]);
+    }
+
+    /**
+     * @param verdict - as delivered to the player: 0 is wrong, 1 is correct, -2 is the set was invalidated.
+     */
+    public void verdict(int player, int verdict) {
+        if (enabled) append(VERDICT, player, verdict, 0, 0);
+    }
+
+    public void reshuffle() {
+        if (enabled) append(RESHUFFLE, -1, 0, 0, 0);
+    }
+
+    private void append(int type, int player, int a, int b, int c) {
+        long nanos = System.nanoTime();
+        long entry = entries.getAndIncrement();
+        int index = (int) (entry / ENTRIES_PER_SEGMENT);
+        if (index >= MAX_SEGMENTS) {
+            dropped.increment();
+            return;
+        }
+        MappedByteBuffer segment = segments.get(index);
+        if (segment == null && (segment = mapSegment(index)) == null) {
+            dropped.increment();
+            return;
+        }
+        int offset = (int) (entry % ENTRIES_PER_SEGMENT) * ENTRY_BYTES;
+        segment.putLong(offset, nanos);
+        segment.putInt(offset + 8, player);
+        segment.putInt(offset + 12, a);
+        segment.putInt(offset + 16, b);
+        segment.putInt(offset + 20, c);
+        segment.putInt(offset + 28, type);
+    }
+
+    /**
+     * Maps a segment the first time an entry falls in it.
+     */
+    private synchronized MappedByteBuffer mapSegment(int index) {
+        MappedByteBuffer segment = segments.get(index);
+        if (segment != null) return segment;
+        try {
+            segment = map(index);
+        } catch (IOException e) {
+            return null;
+        }
+        segments.set(index, segment);
+        return segment;
+    }
+
+    /**
+     * Writes the journal to the disk and closes it (called when the game ends, after the players' threads).
+     * The file is cut to the entries written, since the segments mapped it a whole segment at a time.
+     * @param logger - reports the events that were dropped, if any.
+     */
+    public void close(Logger logger) {
+        if (!enabled) return;
+        long written = Math.min(entries.getAndSet(MAX_ENTRIES), MAX_ENTRIES); //an event recorded from here on is dropped
+        for (int i = 0; i < MAX_SEGMENTS && segments.get(i) != null; i++)
+            segments.get(i).force();
+        try {
+            channel.truncate(written * ENTRY_BYTES);
+        } catch (IOException e) {
+            logger.warning("could not cut the game journal to its size: " + e);
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {}
+        if (dropped.sum() > 0)
+            logger.warning("the game journal was full, " + dropped.sum() + " events were dropped");
+    }
+}
@@ -0,0 +1,203 @@
+package bguspl.set.ex;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The metrics of a single game, recorded on the hot paths of the players, dealer and table.
+ * Recording is an atomic increment and never allocates or locks. While the game runs, the metrics are
+ * registered as a JMX bean and, if the bguspl.metrics.dumpSeconds system property is positive,
+ * periodically written to the log.
+ */
+public class GameMetrics implements GameMetricsMBean {
+
+    /**
+     * The interval of the periodic dump, in seconds (0 disables it).
+     */
+    public static final long DUMP_SECONDS = Long.getLong("bguspl.metrics.dumpSeconds", 0);
+
+    private static final AtomicInteger nextGame = new AtomicInteger();
+
+    /**
+     * The time from submitting a set until the dealer judged it.
+     */
+    protected final LatencyHistogram verdictLatency = new LatencyHistogram();
+
+    /**
+     * The time players spent waiting for a verdict, including invalidated sets.
+     */
+    protected final LatencyHistogram verdictWait = new LatencyHistogram();
+
+    /**
+     * The time from a key press until the player's token was placed.
+     */
+    protected final LatencyHistogram keypressToToken = new LatencyHistogram();
+
+    /**
+     * The time the dealer spent on each iteration of its loop, not counting the wait for work.
+     */
+    protected final LatencyHistogram dealerIteration = new LatencyHistogram();
+
+    /**
+     * The number of submitted sets found by the dealer each time it took the queue (values are counts, not nanoseconds).
+     */
+    protected final LatencyHistogram queueDepth = new LatencyHistogram();
+
+    /**
+     * The number of times all the cards were returned to the deck.
+     */
+    protected final LongAdder reshuffles = new LongAdder();
+
+    private final Table table;
+    private final Logger logger;
+    private final long startNanos;
+    private ObjectName name;
+    private volatile TimerWheel.Timeout dumpTimeout;
+
+    public GameMetrics(Table table, Logger logger) {
+        this.table = table;
+        this.logger = logger;
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Registers the metrics as a JMX bean and starts the periodic dump (called when the game starts).
+     */
+    public void start() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            name = new ObjectName("bguspl.set:type=GameMetrics,name=game-" + nextGame.getAndIncrement());
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            logger.warning("could not register game metrics: " + e);
+            name = null;
+        }
+        if (DUMP_SECONDS > 0)
+            scheduleDump();
+    }
+
+    /**
+     * Unregisters the JMX bean and stops the periodic dump (called when the game ends).
+     */
+    public void stop() {
+        TimerWheel.Timeout timeout = dumpTimeout;
+        dumpTimeout = null;
+        if (timeout != null)
+            timeout.cancel();
+        if (name != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (JMException ignored) {}
+            name = null;
+        }
+    }
+
+    private void scheduleDump() {
+        dumpTimeout = table.timer.schedule(DUMP_SECONDS * 1000, () -> {
+            if (dumpTimeout == null) return; //stopped
+            logger.info(dump());
+            scheduleDump();
+        });
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1e3;
+    }
+
+    @Override
+    public long getSetsJudged() {
+        return verdictLatency.count();
+    }
+
+    @Override
+    public double getVerdictLatencyP50Micros() {
+        return micros(verdictLatency.percentile(50));
+    }
+
+    @Override
+    public double getVerdictLatencyP99Micros() {
+        return micros(verdictLatency.percentile(99));
+    }
+
+    @Override
+    public double getVerdictLatencyMaxMicros() {
+        return micros(verdictLatency.max());
+    }
+
+    @Override
+    public double getVerdictWaitP99Micros() {
+        return micros(verdictWait.percentile(99));
+    }
+
+    @Override
+    public double getKeypressToTokenP50Micros() {
+        return micros(keypressToToken.percentile(50));
+    }
+
+    @Override
+    public double getKeypressToTokenP99Micros() {
+        return micros(keypressToToken.percentile(99));
+    }
+
+    @Override
+    public double getDealerIterationP50Micros() {
+        return micros(dealerIteration.percentile(50));
+    }
+
+    @Override
+    public double getDealerIterationP99Micros() {
+        return micros(dealerIteration.percentile(99));
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return table.finishedPlayerSets.size();
+    }
+
+    @Override
+    public long getQueueDepthP99() {
+        return queueDepth.percentile(99);
+    }
+
+    @Override
+    public long getQueueDepthMax() {
+        return queueDepth.max();
+    }
+
+    @Override
+    public long getReshuffles() {
+        return reshuffles.sum();
+    }
+
+    @Override
+    public double getReshufflesPerMinute() {
+        double minutes = (System.nanoTime() - startNanos) / 60e9;
+        return minutes > 0 ? reshuffles.sum() / minutes : 0;
+    }
+
+    @Override
+    public long getTokenCasRetries() {
+        long retries = 0;
+        for (ThreadSafeList slot : table.slots)
+            retries += slot.casRetries.sum();
+        return retries;
+    }
+
+    @Override
+    public String dump() {
+        return String.format("metrics: judged %d, verdict latency p50/p99/max %.1f/%.1f/%.1f us, verdict wait p99 %.1f us, "
+                        + "keypress-to-token p50/p99 %.1f/%.1f us, dealer iteration p50/p99 %.1f/%.1f us, "
+                        + "queue depth now/p99/max %d/%d/%d, reshuffles %d (%.2f/min), token CAS retries %d",
+                getSetsJudged(), getVerdictLatencyP50Micros(), getVerdictLatencyP99Micros(), getVerdictLatencyMaxMicros(),
+                getVerdictWaitP99Micros(), getKeypressToTokenP50Micros(), getKeypressToTokenP99Micros(),
+                getDealerIterationP50Micros(), getDealerIterationP99Micros(),
+                getQueueDepth(), getQueueDepthP99(), getQueueDepthMax(), getReshuffles(), getReshufflesPerMinute(),
+                getTokenCasRetries());
+    }
+}
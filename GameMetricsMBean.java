@@ -0,0 +1,39 @@
+package bguspl.set.ex;
+
+/**
+ * The JMX view of a game's metrics. Latencies are in microseconds.
+ */
+public interface GameMetricsMBean {
+
+    long getSetsJudged();
+
+    double getVerdictLatencyP50Micros();
+
+    double getVerdictLatencyP99Micros();
+
+    double getVerdictLatencyMaxMicros();
+
+    double getVerdictWaitP99Micros();
+
+    double getKeypressToTokenP50Micros();
+
+    double getKeypressToTokenP99Micros();
+
+    double getDealerIterationP50Micros();
+
+    double getDealerIterationP99Micros();
+
+    int getQueueDepth();
+
+    long getQueueDepthP99();
+
+    long getQueueDepthMax();
+
+    long getReshuffles();
+
+    double getReshufflesPerMinute();
+
+    long getTokenCasRetries();
+
+    String dump();
+}
@@ -0,0 +1,179 @@
+package bguspl.set.ex;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Properties;
+
+import bguspl.set.Env;
+
+/**
+ * Replays a game journal (see GameJournal) through a Table and a Dealer, at full speed and without a window.
+ * Cards and tokens are placed and removed as recorded, submitted sets are queued as the players sent them,
+ * and at each recorded verdict the dealer judges the queue, so the verdicts it gives can be compared with the recorded ones.
+ * Reports the replay speed, the time the dealer spent judging, and the longest gap between recorded events (a stall).
+ *
+ * Usage: GameReplay journal-file
+ * (run without the bguspl.journal.dir system property, so the replay is not journaled itself)
+ */
+public class GameReplay {
+
+    private final Table table;
+    private final Dealer dealer;
+    private final Player[] players;
+
+    /**
+     * The time the dealer spent judging each batch of sets.
+     */
+    private final LatencyHistogram judging;
+
+    private long events;
+    private long verdicts;
+    private long mismatches;
+    private long previousNanos;
+    private long longestGapNanos;
+    private long longestGapEvent;
+    private int longestGapType;
+
+    public GameReplay(int rows, int columns, int playersCount, int featureCount, int featureSize) {
+        Properties properties = new Properties();
+        properties.setProperty("Rows", Integer.toString(rows));
+        properties.setProperty("Columns", Integer.toString(columns));
+        properties.setProperty("FeatureCount", Integer.toString(featureCount));
+        properties.setProperty("FeatureSize", Integer.toString(featureSize));
+        Env env = HeadlessSimulation.createEnv(playersCount, properties);
+        this.table = new Table(env);
+        this.players = new Player[playersCount];
+        this.dealer = new Dealer(env, table, players);
+        for (int i = 0; i < playersCount; i++)
+            players[i] = new Player(env, dealer, table, i, false); //the players' threads are never started
+        this.judging = new LatencyHistogram();
+    }
+
+    /**
+     * Applies a single recorded event.
+     */
+    private void replay(int type, int player, int a, int b, int c) {
+        switch (type) {
+            case GameJournal.CARD_PLACED:
+                if (table.slotToCard[b] == -1 && table.cardToSlot[a] == -1)
+                    table.placeCard(a, b);
+                break;
+            case GameJournal.CARD_REMOVED:
+                if (table.slotToCard[b] == a) //cards of a legal set were already removed by the dealer
+                    table.removeCard(b);
+                break;
+            case GameJournal.TOKEN_PLACED:
+                table.placeToken(player, a);
+                players[player].placed_tokens[a] = true;
+                break;
+            case GameJournal.TOKEN_REMOVED:
+                table.removeToken(player, a);
+                players[player].placed_tokens[a] = false;
+                break;
+            case GameJournal.SET_SUBMITTED:
+                submit(players[player], new int[]{a, b, c});
+                break;
+            case GameJournal.VERDICT:
+                if (!table.finishedPlayerSets.isEmpty()) {
+                    long start = System.nanoTime();
+                    dealer.removeCardsFromTable();
+                    judging.record(System.nanoTime() - start);
+                }
+                verdicts++;
+                if (players[player].wasCorrect != a)
+                    mismatches++;
+                break;
+            case GameJournal.RESHUFFLE:
+                table.finishedPlayerSets.removeAll();
+                table.removeAllTokens();
+                for (Player p : players)
+                    p.placed_tokens = new boolean[table.slotToCard.length];
+                break;
+            default:
+                throw new IllegalStateException("unknown journal event type " + type + " at event " + events);
+        }
+    }
+
+    /**
+     * Queues a set as Player.sendSetCards builds it, from the cards on the table at this point of the replay.
+     */
+    private void submit(Player player, int[] cards) {
+        LinkPlayerSet link = player.playerSingleLink;
+        for (int i = 0; i < cards.length; i++) {
+            int slot = cards[i] < 0 ? -1 : table.cardToSlot[cards[i]];
+            if (slot == -1) cards[i] = -1; //not on the table here, the dealer will invalidate the set
+            link.slots[i] = slot;
+            link.epochs[i] = slot == -1 ? 0 : table.slotEpochs[slot];
+        }
+        link.cards = cards;
+        link.validate(table.cardFeatures);
+        player.wasCorrect = -1;
+        table.finishedPlayerSets.add(link);
+    }
+
+    /**
+     * Replays all the events of a journal and prints the results.
+     * @param channel - the journal file.
+     * @param order   - the byte order the journal was written in.
+     */
+    private void run(FileChannel channel, ByteOrder order) throws IOException {
+        long segmentBytes = (long) GameJournal.ENTRIES_PER_SEGMENT * GameJournal.ENTRY_BYTES;
+        long size = channel.size();
+        long start = System.nanoTime();
+        boolean header = true;
+        outer:
+        for (long position = 0; position < size; position += segmentBytes) {
+            MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(segmentBytes, size - position));
+            segment.order(order);
+            for (int offset = 0; offset + GameJournal.ENTRY_BYTES <= segment.limit(); offset += GameJournal.ENTRY_BYTES) {
+                if (header) { //the first entry is the header
+                    header = false;
+                    continue;
+                }
+                int type = segment.getInt(offset + 28);
+                if (type == 0) break outer; //the end of the journal
+                long nanos = segment.getLong(offset);
+                if (events > 0 && nanos - previousNanos > longestGapNanos) {
+                    longestGapNanos = nanos - previousNanos;
+                    longestGapEvent = events;
+                    longestGapType = type;
+                }
+                previousNanos = nanos;
+                replay(type, segment.getInt(offset + 8), segment.getInt(offset + 12), segment.getInt(offset + 16), segment.getInt(offset + 20));
+                events++;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        table.ui.stop();
+
+        System.out.printf("events: %d, time: %.3f s, events/sec: %.1f%n", events, seconds, events / seconds);
+        System.out.printf("verdicts: %d, differing from the recorded ones: %d%n", verdicts, mismatches);
+        System.out.printf("dealer judging (us): batches %d, p50 %.1f, p99 %.1f, max %.1f%n", judging.count(),
+                judging.percentile(50) / 1e3, judging.percentile(99) / 1e3, judging.max() / 1e3);
+        System.out.printf("longest gap between recorded events: %.3f ms, before event %d (type %d)%n",
+                longestGapNanos / 1e6, longestGapEvent, longestGapType);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: GameReplay journal-file");
+            System.exit(1);
+        }
+        try (RandomAccessFile file = new RandomAccessFile(args[0], "r")) {
+            FileChannel channel = file.getChannel();
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, GameJournal.ENTRY_BYTES);
+            header.order(ByteOrder.nativeOrder());
+            if (header.getInt(0) != GameJournal.MAGIC) //written on a machine of the other byte order
+                header.order(header.order() == ByteOrder.BIG_ENDIAN ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+            if (header.getInt(0) != GameJournal.MAGIC)
+                throw new IOException(args[0] + " is not a game journal");
+            if (header.getInt(4) != GameJournal.VERSION)
+                throw new IOException("unsupported journal version " + header.getInt(4));
+            GameReplay replay = new GameReplay(header.getInt(8), header.getInt(12), header.getInt(16), header.getInt(20), header.getInt(24));
+            replay.run(channel, header.order());
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package bguspl.set.ex;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.UtilImpl;
+
+/**
+ * Runs complete games of computer players back to back, without a window and with every delay set to zero,
+ * and reports the throughput of the dealer and players.
+ *
+ * Usage: HeadlessSimulation [players] [games] [config.properties]
+ *
+ * Besides the game configuration, the properties file may choose the computer players' strategy:
+ * AIStrategy (random or solver), AIAccuracy (between 0 and 1) and AIReactionSeconds.
+ *
+ * Every per-slot and per-player structure is sized from the configuration, so the same runner stress-tests
+ * large tables: for example Rows=9 and Columns=9 deal the whole deck onto 81 slots, with 128 players.
+ */
+public class HeadlessSimulation {
+
+    /**
+     * The number of computer players in each game.
+     */
+    private final int playersCount;
+
+    /**
+     * The number of games to run.
+     */
+    private final int games;
+
+    /**
+     * The game environment shared by all the games.
+     */
+    private final Env env;
+
+    /**
+     * Creates the strategy of each computer player.
+     */
+    private final Supplier<AIStrategy> strategies;
+
+    /**
+     * The time from submitting a set until the dealer judged it, over all the games.
+     */
+    private final LatencyHistogram verdictLatency;
+
+    /**
+     * The number of legal sets found, over all the games.
+     */
+    private long correctSets;
+
+    public HeadlessSimulation(int playersCount, int games, Properties properties) {
+        this.playersCount = playersCount;
+        this.games = games;
+        this.env = createEnv(playersCount, properties);
+        this.strategies = strategies(properties);
+        this.verdictLatency = new LatencyHistogram();
+        this.correctSets = 0;
+    }
+
+    /**
+     * Creates a game environment with no window and every delay set to zero.
+     * @param playersCount - the number of computer players.
+     * @param properties   - the game configuration, overridden where needed.
+     * @return             - the game environment.
+     */
+    public static Env createEnv(int playersCount, Properties properties) {
+        properties.setProperty("HumanPlayers", "0");
+        properties.setProperty("ComputerPlayers", Integer.toString(playersCount));
+        properties.setProperty("TableDelaySeconds", "0");
+        properties.setProperty("PointFreezeSeconds", "0");
+        properties.setProperty("PenaltyFreezeSeconds", "0");
+        properties.setProperty("EndGamePauseSeconds", "0");
+        properties.setProperty("Hints", "false");
+        if (properties.getProperty("TurnTimeoutSeconds") == null)
+            properties.setProperty("TurnTimeoutSeconds", "0"); //a round no player solves ends quickly
+
+        Logger logger = Logger.getLogger(HeadlessSimulation.class.getName());
+        logger.setLevel(Level.WARNING);
+        Config config = new Config(logger, properties);
+        return new Env(logger, config, new NullUserInterface(), new UtilImpl(config));
+    }
+
+    /**
+     * Reads the computer players' strategy from the properties.
+     * @param properties - the configuration.
+     * @return           - creates a strategy for each computer player.
+     */
+    public static Supplier<AIStrategy> strategies(Properties properties) {
+        String strategy = properties.getProperty("AIStrategy", "random");
+        if (strategy.equalsIgnoreCase("random"))
+            return RandomStrategy::new;
+        if (!strategy.equalsIgnoreCase("solver"))
+            throw new IllegalArgumentException("unknown AIStrategy: " + strategy);
+        double accuracy = Double.parseDouble(properties.getProperty("AIAccuracy", "1"));
+        long reactionMillis = (long) (Double.parseDouble(properties.getProperty("AIReactionSeconds", "0")) * 1000.0);
+        return () -> new SolverStrategy(accuracy, reactionMillis);
+    }
+
+    /**
+     * Plays a single game to its end. The calling thread is the dealer's thread.
+     * @param env        - the game environment.
+     * @param players    - filled with the game's players.
+     * @param strategies - creates the strategy of each player.
+     * @return           - the game's table.
+     */
+    public static Table playGame(Env env, Player[] players, Supplier<AIStrategy> strategies) {
+        Table table = new Table(env);
+        Dealer dealer = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; i++) {
+            players[i] = new Player(env, dealer, table, i, false);
+            players[i].AIsleep = 0;
+            players[i].inlineAI = true; //one thread per player is enough without a window
+            players[i].strategy = strategies.get();
+        }
+        dealer.run();
+        return table;
+    }
+
+    /**
+     * Runs a single game to its end.
+     */
+    private void runGame() {
+        Player[] players = new Player[playersCount];
+        Table table = playGame(env, players, strategies);
+        verdictLatency.add(table.metrics.verdictLatency);
+        for (Player player : players)
+            correctSets += player.score();
+    }
+
+    /**
+     * Runs all the games and prints the results.
+     */
+    public void run() {
+        long start = System.nanoTime();
+        for (int game = 0; game < games; game++)
+            runGame();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long judged = verdictLatency.count();
+        System.out.printf("games: %d, players: %d, time: %.2f s%n", games, playersCount, seconds);
+        System.out.printf("games/sec: %.2f%n", games / seconds);
+        System.out.printf("sets judged/sec: %.1f (%d judged, %d correct)%n", judged / seconds, judged, correctSets);
+        System.out.printf("submit-to-verdict latency (us): p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n",
+                verdictLatency.percentile(50) / 1e3, verdictLatency.percentile(90) / 1e3,
+                verdictLatency.percentile(99) / 1e3, verdictLatency.percentile(99.9) / 1e3,
+                verdictLatency.max() / 1e3);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int playersCount = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int games = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        Properties properties = new Properties();
+        if (args.length > 2) {
+            try (InputStream is = new FileInputStream(args[2])) {
+                properties.load(is);
+            }
+        }
+        new HeadlessSimulation(playersCount, games, properties).run();
+    }
+}
@@ -2,12 +2,73 @@ package bguspl.set.ex;
 
 public class LinkPlayerSet {
     public int[] cards;
+
+    /**
+     * The slot of each card, and the slot's version when the set was built (see Table.slotEpochs).
+     */
+    protected final int[] slots;
+    protected final int[] epochs;
+
+    /**
+     * True iff the cards form a legal set, computed by the submitting player (see validate).
+     */
+    protected boolean legal;
     protected Player player;
 
+    /**
+     * The System.nanoTime() at which the set was submitted to the dealer.
+     */
+    protected long submitNanos;
+
 
     public LinkPlayerSet(int[] _cards, Player _player){
         this.cards=_cards; 
         this.player=_player;
+        this.slots = new int[_cards.length];
+        this.epochs = new int[_cards.length];
+    }
+
+    /**
+     * Checks whether the cards form a legal set. Called by the submitting player when the set is built,
+     * so the dealer only has to check that the cards are still on the table.
+     * @param features - the features of the cards.
+     */
+    public void validate(CardFeatures features) {
+        boolean allCards = true;
+        for (int card : this.cards)
+            if (card < 0) allCards = false; //a card taken before the set was sent
+        this.legal = allCards && features.testSet(this.cards);
+    }
+
+    /**
+     * Waits until the dealer delivers a verdict on this set (i.e. the player's wasCorrect is no longer -1),
+     * or the player is terminated (the game may end between submitting the set and waiting here).
+     */
+    public synchronized void awaitVerdict() {
+        while(this.player.wasCorrect==-1 && !this.player.terminated()){
+            try{
+                this.wait();
+            } catch (InterruptedException ignored) {}
+        }
+    }
+
+    /**
+     * Delivers a verdict to the player of this set, waking only that player.
+     * @param verdict - 0 is wrong, 1 is correct, -2 is the set was invalidated.
+     */
+    public synchronized void deliverVerdict(int verdict) {
+        this.player.wasCorrect = verdict;
+        this.notifyAll();
+    }
+
+    /**
+     * Invalidates the set if no verdict was delivered on it yet, waking the player if it waits for one.
+     * A verdict that was already delivered is kept until the player acts on it, so a reshuffle never takes away a point.
+     */
+    public synchronized void invalidate() {
+        if(this.player.wasCorrect==-1){
+            this.deliverVerdict(-2);
+        }
     }
 
     public boolean containsCards(int[] cardsToRemove){
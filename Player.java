@@ -1,7 +1,7 @@
 package bguspl.set.ex;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.List;
 
 import bguspl.set.Env;
 
@@ -29,15 +29,15 @@ public class Player implements Runnable {
     public final int id;
 
     /**
-     * The thread representing the current player.
+     * The thread representing the current player (set by the dealer before the thread starts).
      */
-    private Thread playerThread;
+    protected Thread playerThread;
 
 
     /**
      * The commands list of the current player.
      */
-    protected BoundedQueue<Integer> commandsQueue;
+    protected BoundedQueue commandsQueue;
 
     /**
      * The thread of the AI (computer) player (an additional thread used to generate key presses).
@@ -54,6 +54,16 @@ public class Player implements Runnable {
      */
     private volatile boolean terminate;
 
+    /**
+     * The way a computer player chooses its key presses.
+     */
+    protected AIStrategy strategy;
+
+    /**
+     * True iff a computer player generates its key presses on its own thread instead of an additional one.
+     */
+    protected boolean inlineAI;
+
     /**
      * The current score of the player.
      */
@@ -85,11 +95,32 @@ public class Player implements Runnable {
      */
     protected boolean[] placed_tokens;
 
+    /**
+     * The cards on the table and the slots' versions, copied when a set is sent.
+     */
+    private final int[] tableCards;
+    private final int[] tableEpochs;
+
     /**
      * the Link containing the set the player has sent to be checked
      */
     protected LinkPlayerSet playerSingleLink;
 
+    /**
+     * Locked on while waiting for a timed event of the timer wheel.
+     */
+    private final Object timerLock = new Object();
+
+    /**
+     * True iff the timed event the player waits for has fired.
+     */
+    private boolean timerFired;
+
+    /**
+     * The freeze display updates scheduled on the timer wheel for the current freeze (guarded by timerLock).
+     */
+    private final List<TimerWheel.Timeout> freezeDisplay = new ArrayList<TimerWheel.Timeout>();
+
     /**
      * The class constructor.
      *
@@ -104,15 +135,18 @@ public class Player implements Runnable {
         this.table = table;
         this.id = id;
         this.human = human;
-        this.commandsQueue = new BoundedQueue<Integer>();
+        this.commandsQueue = new BoundedQueue();
         this.tokensLeft = 3;
         this.status = 1; 
-        this.placed_tokens = new boolean[12];
+        this.placed_tokens = new boolean[table.slotToCard.length];
+        this.tableCards = new int[table.slotToCard.length];
+        this.tableEpochs = new int[table.slotToCard.length];
         this.wasCorrect = -1;
         this.AIsleep = 0;
+        this.strategy = new RandomStrategy();
         int[] cards = new int[3];
         this.playerSingleLink = new LinkPlayerSet(cards, this);
-        System.out.println("player created, id: " + id); //TODO delete later
+        env.logger.fine(() -> "player created, id: " + id);
     }
 
     /**
@@ -128,17 +162,10 @@ public class Player implements Runnable {
             // TODO implement main player loop
             //EYTODO maybe insert here, if tableready==false, then wait. and then in the dealer we will notifyall
             if(this.tokensLeft==0 && this.status==1 && this.table.tableReady){ //player just finished making a set
-                this.wasCorrect = -1;
                 this.status=2;
                 this.sendSetCards();
-
-                synchronized(this.table.playersLocker){
-                    while(this.wasCorrect==-1){
-                        try{
-                            this.table.playersLocker.wait(); //dealer will notify, and instruct point/penatly which will also change tokensleft and status
-                        } catch (InterruptedException ignored) {}
-                    }
-                }
+                this.playerSingleLink.awaitVerdict(); //dealer will wake only this player, and instruct point/penatly
+                this.recordVerdictLatency();
                 //hazilon changed here
                 if(this.wasCorrect==1){
                     this.point();
@@ -154,10 +181,14 @@ public class Player implements Runnable {
                 this.status = 1;
 
             }
+            else if(this.tokensLeft==0){
+                this.table.awaitTableReady(); //a full set is sent once the table is ready
+            }
             else {
-                if(!commandsQueue.isEmpty() && this.table.tableReady){
-                    int slotCommand = commandsQueue.remove();
-                    if(this.status==1){
+                int slotCommand = commandsQueue.take(); //blocks until a key is pressed
+                if(slotCommand != -1){
+                    this.table.awaitTableReady(); //key presses made while the table changes wait for it, as before
+                    if(!this.terminate && this.status==1){
                         if(this.placed_tokens[slotCommand]){ //player removes token
                             this.table.removeToken(this.id, slotCommand);
                             this.placed_tokens[slotCommand]=false;
@@ -165,6 +196,7 @@ public class Player implements Runnable {
                         }
                         else if(!this.placed_tokens[slotCommand]){
                             this.table.placeToken(this.id, slotCommand);
+                            this.table.metrics.keypressToToken.record(System.nanoTime() - commandsQueue.lastAddedNanos());
                             this.placed_tokens[slotCommand]=true; //player adds token
                             this.tokensLeft--;
                         }
@@ -172,7 +204,7 @@ public class Player implements Runnable {
                 }
             }
         }
-        if (!human) try { aiThread.join(); } catch (InterruptedException ignored) {} //EYTODO should be here
+        if (!human && aiThread != Thread.currentThread()) try { aiThread.join(); } catch (InterruptedException ignored) {} //EYTODO should be here
         env.logger.info("thread " + Thread.currentThread().getName() + " terminated.");
     }
 
@@ -182,28 +214,18 @@ public class Player implements Runnable {
      */
     private void createArtificialIntelligence() { //NEYA ADDED
         // note: this is a very, very smart AI (!)
-        aiThread = new Thread(() -> {
+        Runnable ai = () -> {
             env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
 
-            ArrayList<Integer> slotsGenerator = new ArrayList<Integer>();
-            for (int i = 0; i < 12; i++) 
-                slotsGenerator.add(i);
-
             while (!terminate) {
                 // TODO implement player key press simulator
 
                 if(this.tokensLeft==0 && this.status==1 && this.table.tableReady){ //player just finished making a set
                     this.status=2;
                     this.sendSetCards();
-
-                    synchronized(this.table.playersLocker){
-                        while(this.wasCorrect==-1){
-                            try{
-                                this.table.playersLocker.wait(); //dealer will notify, and instruct point/penatly which will also change tokensleft and status
-                                // System.out.println("player: "+this.id +" exited sleep");
-                            } catch (InterruptedException ignored) {}
-                        }
-                    }
+                    this.playerSingleLink.awaitVerdict(); //dealer will wake only this player, and instruct point/penatly
+                    this.recordVerdictLatency();
+                    this.strategy.verdict(this.wasCorrect); //the strategy chooses a new set from here
 
                     if(this.wasCorrect==1){
                         this.point();
@@ -217,28 +239,28 @@ public class Player implements Runnable {
                 
                     this.wasCorrect = -1;
                     this.status = 1;
+                    this.awaitTimer(this.strategy.reactionMillis()); //the time to spot the next set
                 }
 
                 else{
-                    Collections.shuffle(slotsGenerator);
-                    if(this.table.tableReady && this.table.slotToCard[slotsGenerator.get(0)] != null && this.placed_tokens[slotsGenerator.get(0)]==false){ //legal "key press"
-                        this.commandsQueue.add(slotsGenerator.get(0)); 
-                        // System.out.println("ai player: "+this.id + " added to queue");
+                    int slot = this.table.tableReady ? this.strategy.nextSlot(this.table, this.placed_tokens) : -1;
+                    if(slot != -1 && this.table.slotToCard[slot] != -1 && this.placed_tokens[slot]==false){ //legal "key press"
+                        this.commandsQueue.add(slot); 
+                    }
+                    else if(slot == -1){
+                        this.awaitTimer(TimerWheel.DEFAULT_TICK_MILLIS); //nothing to press yet, checks again on the next tick
                     }
 
-                    if(!commandsQueue.isEmpty() && this.table.tableReady){ //will commit "key press"
-                        try{
-                            int slotCommand = this.commandsQueue.remove();
-                            this.table.placeToken(this.id, slotCommand);
-                            // System.out.println("ai player: "+this.id + " placed token");
+                    int slotCommand = this.table.tableReady ? this.commandsQueue.remove() : -1; //a single poll, the dealer may clear the queue at any time
+                    if(slotCommand != -1){ //will commit "key press"
+                        this.table.placeToken(this.id, slotCommand);
+                        this.table.metrics.keypressToToken.record(System.nanoTime() - commandsQueue.lastAddedNanos());
 
-                            this.placed_tokens[slotCommand]=true;
-                            this.tokensLeft--;
-                            if(this.tokensLeft!=0){ //hazilon 28022024
-                                Thread.sleep(this.AIsleep);
-                            }
-                            
-                        } catch (InterruptedException ignored) {}
+                        this.placed_tokens[slotCommand]=true;
+                        this.tokensLeft--;
+                        if(this.tokensLeft!=0){ //hazilon 28022024
+                            this.awaitTimer(this.AIsleep); //paces the next key press
+                        }
                     }
 
                     
@@ -247,7 +269,13 @@ public class Player implements Runnable {
         
 
             env.logger.info("thread " + Thread.currentThread().getName() + " terminated.");
-        }, "computer-" + id);
+        };
+        if (this.inlineAI) { //the player's own thread generates the key presses
+            aiThread = Thread.currentThread();
+            ai.run();
+            return;
+        }
+        aiThread = new Thread(ai, "computer-" + id);
         aiThread.start();
     }
 
@@ -257,9 +285,16 @@ public class Player implements Runnable {
     public void terminate() { //NEYA changed
         // TODO implement
         this.terminate = true;
+        this.commandsQueue.wakeUp(); //a human player may be waiting for a key press
+        this.table.wakeReadyWaiters(); //or for the table to become ready
+        this.playerSingleLink.invalidate(); //the player may be waiting for a verdict that will never come
+        synchronized(this.timerLock){
+            this.cancelFreezeDisplay(); //no display updates after the player is gone
+            this.timerLock.notifyAll(); //or for a timed event
+        }
 
         try{
-            this.playerThread.join(); //waits till it finishes
+            if(this.playerThread != null) this.playerThread.join(); //waits till it finishes (a player never started has nothing to wait for)
         } catch(InterruptedException ignored){}
     }
 
@@ -267,7 +302,7 @@ public class Player implements Runnable {
      * Used for AI players, to reset them
      */
     public void playerReset() { //Hazilon added
-        for (int i = 0; i < 12; i++){ //remove all tokens if set is invalid
+        for (int i = 0; i < this.placed_tokens.length; i++){ //remove all tokens if set is invalid
             if(this.placed_tokens[i] == true){
                 this.table.removeToken(this.id, i);
                 this.placed_tokens[i] = false;
@@ -276,9 +311,64 @@ public class Player implements Runnable {
         this.commandsQueue.Clear();
         this.tokensLeft = 3; //hazilon added change here
         this.status = 1;
-        try{
-            Thread.sleep(this.AIsleep); //sleep to prolongue next key press
-        } catch (InterruptedException ignored) {}
+        this.awaitTimer(this.AIsleep); //prolongues the next key press
+    }
+
+    /**
+     * Waits until the timer wheel fires after the given time, or the player is terminated.
+     * @param millis - the time to wait, in milliseconds.
+     */
+    private void awaitTimer(long millis) {
+        if(millis <= 0) return;
+        synchronized(this.timerLock){
+            this.timerFired = false;
+        }
+        TimerWheel.Timeout timeout = this.table.timer.schedule(millis, this::fireTimer);
+        synchronized(this.timerLock){
+            while(!this.timerFired && !this.terminate){
+                try{
+                    this.timerLock.wait();
+                } catch (InterruptedException ignored) {}
+            }
+        }
+        timeout.cancel();
+    }
+
+    private void fireTimer() {
+        synchronized(this.timerLock){
+            this.timerFired = true;
+            this.timerLock.notifyAll();
+        }
+    }
+
+    /**
+     * Freezes the player until the timer wheel unfreezes it. The timer wheel also updates the freeze display
+     * every second, so the player's thread only waits for the unfreeze event.
+     * @param freezeMillis - the freeze time, in milliseconds.
+     */
+    private void freeze(long freezeMillis) {
+        this.table.ui.setFreeze(this.id, freezeMillis);
+        synchronized(this.timerLock){
+            for(long elapsed = 1000; elapsed < freezeMillis && !this.terminate; elapsed += 1000){
+                long left = freezeMillis - elapsed;
+                this.freezeDisplay.add(this.table.timer.schedule(elapsed, () -> this.table.ui.setFreeze(this.id, left))); //descending until unfrozen
+            }
+        }
+        this.awaitTimer(freezeMillis);
+        synchronized(this.timerLock){
+            this.cancelFreezeDisplay(); //only left if the player was terminated during the freeze
+        }
+        this.table.ui.setFreeze(this.id, 0);
+    }
+
+    /**
+     * Cancels the freeze display updates that did not run yet. Called while holding timerLock.
+     */
+    private void cancelFreezeDisplay() {
+        for(TimerWheel.Timeout timeout : this.freezeDisplay){
+            timeout.cancel();
+        }
+        this.freezeDisplay.clear();
     }
 
 
@@ -287,17 +377,40 @@ public class Player implements Runnable {
      */
     public void sendSetCards() {
         int[] newCards = new int[3];
+        this.table.readCards(this.tableCards, this.tableEpochs); //all 3 cards from the same moment, never mid-replacement
         int j=0;
         for(int i=0;j<3 && i<this.placed_tokens.length;i++){
             if(this.placed_tokens[i]==true){
-                newCards[j] = table.slotToCard[i];
+                newCards[j] = this.tableCards[i]; //-1 if the card was just taken, the dealer will invalidate the set
+                this.playerSingleLink.slots[j] = i;
+                this.playerSingleLink.epochs[j] = this.tableEpochs[i]; //lets the dealer reject the set if the slot changes
                 j++;
             }
         }
+        for(;j<3;j++){ //fewer than 3 tokens were found: the missing cards make the set invalid, and it never matches the table
+            newCards[j] = -1;
+            this.playerSingleLink.slots[j] = -1;
+            this.playerSingleLink.epochs[j] = -1;
+        }
         this.playerSingleLink.cards = newCards;
+        this.playerSingleLink.validate(this.table.cardFeatures); //on this thread, not the dealer's
+        this.wasCorrect = -1; //no verdict yet
+        this.playerSingleLink.submitNanos = System.nanoTime();
+        this.table.journal.setSubmitted(this.id, newCards);
         this.table.finishedPlayerSets.add(playerSingleLink);  //hazilon
     }
 
+    /**
+     * Records the time from submitting the set until the verdict (invalidated sets are not counted as judged).
+     */
+    private void recordVerdictLatency() {
+        long latency = System.nanoTime() - this.playerSingleLink.submitNanos;
+        this.table.metrics.verdictWait.record(latency);
+        if(this.wasCorrect==0 || this.wasCorrect==1){
+            this.table.metrics.verdictLatency.record(latency);
+        }
+    }
+
     /**
      * This method is called when a key is pressed.
      *
@@ -306,7 +419,7 @@ public class Player implements Runnable {
     public void keyPressed(int slot) { //EYTODO change, have only check for status 1
         // TODO implement
         if(this.status==1 && this.table.tableReady){
-            if (this.table.slotToCard[slot] != null){ //NEYA ADDED IF
+            if (this.table.slotToCard[slot] != -1){ //NEYA ADDED IF
                 this.commandsQueue.add(slot);
                 }
         }
@@ -321,20 +434,11 @@ public class Player implements Runnable {
     public void point() {
         // TODO implement
         this.score++;
-        env.ui.setScore(this.id, score);
+        this.table.ui.setScore(this.id, score);
         this.commandsQueue.Clear();
-        this.placed_tokens = new boolean[12]; //resets the player's placed_tokens
+        this.placed_tokens = new boolean[this.placed_tokens.length]; //resets the player's placed_tokens
         
-        long freezeTime = this.env.config.pointFreezeMillis;
-        env.ui.setFreeze(this.id, freezeTime); //EYTODO chech if works correctly
-
-        while(freezeTime>0){
-            freezeTime = freezeTime - 1000;
-            try {
-                Thread.sleep(1000); //EYTODO maybe change, now total 5 seconds
-            } catch (InterruptedException ignored) {}
-            env.ui.setFreeze(this.id, freezeTime); //descending until unfrozen
-        }
+        this.freeze(this.env.config.pointFreezeMillis);
 
         this.status = 1; //indicates he resumes to play
         this.tokensLeft = 3;
@@ -347,17 +451,9 @@ public class Player implements Runnable {
      */
     public void penalty() {
         // TODO implement
-        long freezeTime = this.env.config.penaltyFreezeMillis;
-        env.ui.setFreeze(this.id, freezeTime); //EYTODO chech if works correctly
-        while(freezeTime>0){
-            freezeTime = freezeTime - 1000;
-            try {
-                Thread.sleep(1000); //EYTODO maybe change, now total 5 seconds
-            } catch (InterruptedException ignored) {}
-            env.ui.setFreeze(this.id, freezeTime); //descending until unfrozen
-        }
+        this.freeze(this.env.config.penaltyFreezeMillis);
         this.commandsQueue.Clear();
-        this.placed_tokens = new boolean[12]; //resets the player's placed_tokens
+        this.placed_tokens = new boolean[this.placed_tokens.length]; //resets the player's placed_tokens
         this.status = 1;
         this.tokensLeft = 3;
     }
@@ -366,35 +462,93 @@ public class Player implements Runnable {
         return this.human;
     }
 
+    /**
+     * @return - true iff the player was terminated.
+     */
+    public boolean terminated() {
+        return this.terminate;
+    }
+
     public int score() {
         return score;
     }
 }
 
-class BoundedQueue<T> {
-    ArrayList<Integer> lst;
-    int capacity;
-    BoundedQueue(){ this.capacity = 3; this.lst = new ArrayList<Integer>(); }
+/**
+ * A bounded ring buffer of slot ids (key presses).
+ * The player thread blocks in take() until a key press is added or the queue is woken up.
+ */
+class BoundedQueue {
+    private final int[] slots;
+    private final long[] addedNanos; //the System.nanoTime() each slot was added at
+    private int head; //index of the next slot to take
+    private int size;
+    private boolean wokenUp;
+    private long lastAddedNanos; //the time the last slot removed was added at
+
+    BoundedQueue(){ this(3); }
+
+    BoundedQueue(int capacity){
+        this.slots = new int[capacity];
+        this.addedNanos = new long[capacity];
+        this.head = 0;
+        this.size = 0;
+        this.wokenUp = false;
+    }
+
+    public synchronized void add(int slot) { //key presses beyond the capacity are ignored
+        if(size < slots.length){
+            slots[(head + size) % slots.length] = slot;
+            addedNanos[(head + size) % slots.length] = System.nanoTime();
+            size++;
+            this.notifyAll();
+        }
+    }
 
-    public void add(Integer obj) {
-        if(lst.size() < capacity)
-            lst.add(obj);
+    public synchronized int remove() { //returns -1 if empty
+        if(size == 0) return -1;
+        int slot = slots[head];
+        lastAddedNanos = addedNanos[head];
+        head = (head + 1) % slots.length;
+        size--;
+        return slot;
     }
 
-    public Integer remove() {
-        Integer retValue = -1;
-        if (!lst.isEmpty()){
-            retValue = lst.remove(0);
-            return retValue;
+    /**
+     * Waits until a slot is available and removes it.
+     * @return - the slot, or -1 if the queue was woken up while empty.
+     */
+    public synchronized int take() {
+        while(size == 0 && !wokenUp){
+            try{
+                this.wait();
+            } catch (InterruptedException ignored) {}
         }
-        return retValue;
+        wokenUp = false;
+        return remove();
+    }
+
+    /**
+     * Releases the thread waiting in take() (used on termination).
+     */
+    public synchronized void wakeUp() {
+        wokenUp = true;
+        this.notifyAll();
+    }
+
+    /**
+     * @return - the System.nanoTime() at which the slot last removed was added (i.e. the key was pressed).
+     */
+    public synchronized long lastAddedNanos() {
+        return lastAddedNanos;
     }
 
-    public void Clear() {
-        lst.clear();
+    public synchronized void Clear() {
+        head = 0;
+        size = 0;
     }
 
-    public boolean isEmpty() {
-        return lst.isEmpty();
+    public synchronized boolean isEmpty() {
+        return size == 0;
     }
 }
@@ -0,0 +1,13 @@
+package bguspl.set.ex;
+
+/**
+ * Deals random cards, regardless of the sets they form.
+ */
+public class RandomDealing implements DealingPolicy {
+
+    @Override
+    public void deal(Table table, Deck deck, int[] slots, int[] cards, int count) {
+        for (int i = 0; i < count; i++)
+            cards[i] = deck.draw();
+    }
+}
@@ -0,0 +1,29 @@
+package bguspl.set.ex;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Presses random slots, so almost every set submitted is wrong.
+ */
+public class RandomStrategy implements AIStrategy {
+
+    @Override
+    public int nextSlot(Table table, boolean[] placedTokens) {
+        int tableSize = table.slotToCard.length;
+        int start = ThreadLocalRandom.current().nextInt(tableSize);
+        for (int i = 0; i < tableSize; i++) {
+            int slot = (start + i) % tableSize;
+            if (table.slotToCard[slot] != -1 && !placedTokens[slot])
+                return slot;
+        }
+        return -1;
+    }
+
+    @Override
+    public void verdict(int verdict) {}
+
+    @Override
+    public long reactionMillis() {
+        return 0;
+    }
+}
@@ -0,0 +1,83 @@
+package bguspl.set.ex;
+
+/**
+ * Deals random cards, except when the table has no legal set: then the first cards dealt are chosen to complete one,
+ * with the card that completes each pair (see CardFeatures.thirdCard). The fewest cards needed are chosen, and the rest
+ * are random. A set is dealt whenever the cards on the table and in the deck allow it, so rounds rarely end in a reshuffle.
+ * With features of other than 3 values there is no single completing card, and the cards are random.
+ */
+public class SetGuaranteeingDealing implements DealingPolicy {
+
+    @Override
+    public void deal(Table table, Deck deck, int[] slots, int[] cards, int count) {
+        int chosen = 0;
+        if (count > 0 && !table.hasSet() && table.cardFeatures.hasUniqueThirdCard())
+            chosen = completeSet(table, deck, cards, count);
+        for (int i = chosen; i < count; i++)
+            cards[i] = deck.draw();
+    }
+
+    /**
+     * Takes from the deck the fewest cards that complete a legal set with the cards on the table.
+     * @return - the number of cards taken, placed in cards[0..]; 0 if no set can be completed with count cards.
+     */
+    private int completeSet(Table table, Deck deck, int[] cards, int count) {
+        CardFeatures features = table.cardFeatures;
+        int[] onTable = table.slotToCard; //the dealer is the only thread changing the table
+
+        for (int a = 0; a < onTable.length; a++) { //a single card completing two cards on the table
+            if (onTable[a] == -1) continue;
+            for (int b = a + 1; b < onTable.length; b++) {
+                if (onTable[b] == -1) continue;
+                int third = features.thirdCard(onTable[a], onTable[b]);
+                if (third != -1 && deck.contains(third)) {
+                    deck.take(third);
+                    cards[0] = third;
+                    return 1;
+                }
+            }
+        }
+        if (count < 2) return 0;
+
+        for (int a = 0; a < onTable.length; a++) { //two cards completing a card on the table
+            if (onTable[a] != -1 && completePair(features, deck, onTable[a], cards, 0))
+                return 2;
+        }
+        if (count < 3 || deck.size() == 0) return 0;
+
+        int start = deck.randomIndex(); //three cards from the deck
+        for (int i = 0; i < deck.size(); i++) {
+            int first = deck.cardAt((start + i) % deck.size());
+            if (completePair(features, deck, first, cards, 1)) {
+                deck.take(first);
+                cards[0] = first;
+                return 3;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Takes from the deck two cards that form a legal set with a given card.
+     * @param first - the given card, which is left in the deck if it is there.
+     * @param into  - the two cards taken are placed in into[at] and into[at + 1].
+     * @return      - true iff such two cards were in the deck.
+     */
+    private boolean completePair(CardFeatures features, Deck deck, int first, int[] into, int at) {
+        int size = deck.size();
+        int start = size > 0 ? deck.randomIndex() : 0;
+        for (int i = 0; i < size; i++) {
+            int second = deck.cardAt((start + i) % size);
+            if (second == first) continue;
+            int third = features.thirdCard(first, second);
+            if (third != -1 && deck.contains(third)) {
+                deck.take(second);
+                deck.take(third);
+                into[at] = second;
+                into[at + 1] = third;
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,92 @@
+package bguspl.set.ex;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Presses the slots of a legal set taken from the table's index of sets, with a configurable accuracy
+ * (the probability a chosen set is legal rather than 3 random cards) and reaction time.
+ */
+public class SolverStrategy implements AIStrategy {
+
+    /**
+     * The probability that a set chosen by the player is legal, between 0 and 1.
+     */
+    private final double accuracy;
+
+    /**
+     * The time the player takes to start a new set after a verdict, in milliseconds.
+     */
+    private final long reactionMillis;
+
+    /**
+     * The cards of the set the player is pressing, and how many of them were pressed.
+     */
+    private final int[] targetCards;
+    private int pressed;
+
+    public SolverStrategy(double accuracy, long reactionMillis) {
+        this.accuracy = accuracy;
+        this.reactionMillis = reactionMillis;
+        this.targetCards = new int[3];
+        this.pressed = targetCards.length;
+    }
+
+    @Override
+    public int nextSlot(Table table, boolean[] placedTokens) {
+        if (pressed == targetCards.length || !isOnTable(table)) {
+            if (!chooseTarget(table)) return -1;
+        }
+        int slot = table.cardToSlot[targetCards[pressed++]];
+        return (slot == -1 || placedTokens[slot]) ? -1 : slot;
+    }
+
+    /**
+     * Whatever the verdict, the tokens of the set are gone, so the next set is chosen afresh from the table.
+     */
+    @Override
+    public void verdict(int verdict) {
+        pressed = targetCards.length;
+    }
+
+    @Override
+    public long reactionMillis() {
+        return reactionMillis;
+    }
+
+    private boolean isOnTable(Table table) {
+        for (int card : targetCards)
+            if (table.cardToSlot[card] == -1) return false;
+        return true;
+    }
+
+    /**
+     * Chooses the set to press: a random legal set from the table with probability accuracy, otherwise 3 random cards.
+     * @return - true iff a set was chosen (an accurate choice fails while there is no set on the table).
+     */
+    private boolean chooseTarget(Table table) {
+        ThreadLocalRandom random = ThreadLocalRandom.current(); //each player runs on its own thread
+        int[] set = random.nextDouble() < accuracy ? table.anySet(random) : randomCards(table);
+        if (set == null) return false;
+        System.arraycopy(set, 0, targetCards, 0, targetCards.length);
+        pressed = 0;
+        return true;
+    }
+
+    private int[] randomCards(Table table) {
+        int[] cards = new int[table.slotToCard.length];
+        table.readCards(cards);
+        int count = 0;
+        for (int card : cards)
+            if (card != -1)
+                cards[count++] = card;
+        if (count < 3) return null;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < 3; i++) { //partial shuffle of the first 3 cards
+            int j = i + random.nextInt(count - i);
+            int card = cards[i];
+            cards[i] = cards[j];
+            cards[j] = card;
+        }
+        return new int[]{cards[0], cards[1], cards[2]};
+    }
+}
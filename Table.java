@@ -4,14 +4,19 @@ import bguspl.set.Env;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.locks.StampedLock;
 import java.util.stream.Collectors;
 
 /**
  * This class contains the data that is visible to the player.
  *
  * @inv slotToCard[x] == y iff cardToSlot[y] == x
+ *
+ * The dealer is the only thread that changes the cards. Other threads read single entries directly,
+ * and take a consistent view of all the slots with readCards, which never blocks.
  */
 public class Table {
 
@@ -21,26 +26,46 @@ public class Table {
     private final Env env;
 
     /**
-     * Mapping between a slot and the card placed in it (null if none).
+     * The user interface the game threads render through. Calls are queued and rendered on a separate thread.
+     */
+    protected final AsyncUserInterface ui;
+
+    /**
+     * Mapping between a slot and the card placed in it (-1 if none).
      */
-    protected final Integer[] slotToCard; // card per slot (if any)
+    protected final int[] slotToCard; // card per slot (if any)
 
     /**
-     * Mapping between a card and the slot it is in (null if none).
+     * Mapping between a card and the slot it is in (-1 if none).
      */
-    protected final Integer[] cardToSlot; // slot per card (if any)
+    protected final int[] cardToSlot; // slot per card (if any)
 
+    /**
+     * Versions the card mappings as a sequence lock: the dealer changes the cards in write mode,
+     * and readers copy them optimistically and retry if a change overlapped the copy.
+     */
+    private final StampedLock cardsLock;
 
     /**
-     * Indicates if the table is ready to be interacted with
+     * The version of each slot, bumped whenever its card changes. A set built from a slot whose version
+     * has changed since is stale.
      */
-    protected boolean tableReady; 
+    protected final int[] slotEpochs;
 
 
     /**
-     * an object used to lock players
+     * Indicates if the table is ready to be interacted with. Changed only through setTableReady.
+     */
+    protected volatile boolean tableReady; 
+
+    /**
+     * The monitor players wait on in awaitTableReady, the number of them waiting,
+     * and the number of times wakeReadyWaiters was called.
      */
-    protected Object playersLocker; 
+    private final Object readyLock = new Object();
+    private volatile int readyWaiters;
+    private long readyWakeUps;
+
 
         /**
      * a list of threadsafeLists, each represents a slot. made to avoid locking the entire table
@@ -52,27 +77,71 @@ public class Table {
      */
     protected ThreadSafeLinkedList finishedPlayerSets; //hazilon
 
+    /**
+     * The features of all the cards, used to find the sets on the table.
+     */
+    protected final CardFeatures cardFeatures;
+
+    /**
+     * The game's metrics, recorded by the players, dealer and table.
+     */
+    protected final GameMetrics metrics;
+
+    /**
+     * The journal of the game's events (disabled unless the bguspl.journal.dir system property is set).
+     */
+    protected final GameJournal journal;
+
+    /**
+     * The timer wheel used for freezes, computer player pacing and the countdown.
+     */
+    protected final TimerWheel timer;
+
+    /**
+     * The legal sets currently on the table, each as an array of 3 card ids. Updated by placeCard and removeCard.
+     */
+    private final ArrayList<int[]> setsOnTable;
+
+    /**
+     * The number of sets on the table each slot takes part in.
+     */
+    private final int[] slotSetCount;
+
     // protected LinkedList<LinkPlayerSet> finishedPlayersCards; //EYTODO implement in the form of FIFO queue thread safe
 
     /**
      * Constructor for testing.
      *
      * @param env        - the game environment objects.
-     * @param slotToCard - mapping between a slot and the card placed in it (null if none).
-     * @param cardToSlot - mapping between a card and the slot it is in (null if none).
+     * @param slotToCard - mapping between a slot and the card placed in it (-1 if none).
+     * @param cardToSlot - mapping between a card and the slot it is in (-1 if none).
      */
-    public Table(Env env, Integer[] slotToCard, Integer[] cardToSlot) {
+    public Table(Env env, int[] slotToCard, int[] cardToSlot) {
 
         this.env = env;
         this.slotToCard = slotToCard;
         this.cardToSlot = cardToSlot;
-        this.slots = new ArrayList<ThreadSafeList>(12);
-        for (int i = 0; i < 12; i++) {
-            slots.add(new ThreadSafeList(env,i));
+        this.cardsLock = new StampedLock();
+        this.slotEpochs = new int[slotToCard.length];
+        this.ui = new AsyncUserInterface(env.ui);
+        this.journal = GameJournal.open(env);
+        this.slots = new ArrayList<ThreadSafeList>(slotToCard.length);
+        for (int i = 0; i < slotToCard.length; i++) {
+            slots.add(new ThreadSafeList(env,ui,i,journal));
         }
         this.finishedPlayerSets = new ThreadSafeLinkedList(); ////hazilon
         this.tableReady = false;
-        this.playersLocker = new Object();
+        this.readyWaiters = 0;
+        this.readyWakeUps = 0;
+        this.cardFeatures = new CardFeatures(env);
+        this.timer = TimerWheel.shared(env.logger);
+        this.metrics = new GameMetrics(this, env.logger);
+        this.setsOnTable = new ArrayList<int[]>();
+        this.slotSetCount = new int[slotToCard.length];
+        for (int slot = 0; slot < slotToCard.length; slot++) {
+            if (slotToCard[slot] != -1)
+                indexCard(slotToCard[slot], slot);
+        }
     }
 
     /**
@@ -82,10 +151,57 @@ public class Table {
      */
     public Table(Env env) {
 
-        this(env, new Integer[env.config.tableSize], new Integer[env.config.deckSize]);
+        this(env, empty(env.config.tableSize), empty(env.config.deckSize));
+    }
+
+    private static int[] empty(int length) {
+        int[] mapping = new int[length];
+        Arrays.fill(mapping, -1);
+        return mapping;
     }
 
 
+    /**
+     * Marks the table as ready or not, waking the players waiting for it to become ready.
+     * @param ready - true iff the table is ready to be interacted with.
+     */
+    public void setTableReady(boolean ready) {
+        tableReady = ready;
+        if (ready && readyWaiters > 0) {
+            synchronized (readyLock) {
+                readyLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Blocks until the table is ready, or wakeReadyWaiters is called.
+     */
+    public void awaitTableReady() {
+        if (tableReady) return;
+        synchronized (readyLock) {
+            readyWaiters++; //seen by setTableReady before it checks for waiters
+            long wakeUps = readyWakeUps;
+            try {
+                while (!tableReady && wakeUps == readyWakeUps)
+                    readyLock.wait();
+            } catch (InterruptedException ignored) {
+            } finally {
+                readyWaiters--;
+            }
+        }
+    }
+
+    /**
+     * Releases every player waiting in awaitTableReady even if the table is not ready (used on termination).
+     */
+    public void wakeReadyWaiters() {
+        synchronized (readyLock) {
+            readyWakeUps++;
+            readyLock.notifyAll();
+        }
+    }
+
     /**
      * returns the required slot, in the form of arraylist.
      * @param slot - the slot in which the card should be placed.
@@ -95,12 +211,39 @@ public class Table {
     }
 
 
+    /**
+     * Copies the cards of all the slots as they were at a single moment, without blocking the dealer.
+     * @param into - filled with the card in each slot (-1 if none); at least as long as the table.
+     */
+    public void readCards(int[] into) {
+        readCards(into, null);
+    }
+
+    /**
+     * Copies the cards of all the slots and their versions as they were at a single moment, without blocking the dealer.
+     * @param cards  - filled with the card in each slot (-1 if none); at least as long as the table.
+     * @param epochs - filled with the version of each slot, or null if not needed.
+     */
+    public void readCards(int[] cards, int[] epochs) {
+        while (true) {
+            long stamp = cardsLock.tryOptimisticRead(); //0 while the dealer is changing the cards
+            System.arraycopy(slotToCard, 0, cards, 0, slotToCard.length);
+            if (epochs != null)
+                System.arraycopy(slotEpochs, 0, epochs, 0, slotEpochs.length);
+            if (stamp != 0 && cardsLock.validate(stamp)) return;
+            Thread.yield();
+        }
+    }
+
     /**
      * This method prints all possible legal sets of cards that are currently on the table.
      */
     public void hints() {
-        List<Integer> deck = Arrays.stream(slotToCard).filter(Objects::nonNull).collect(Collectors.toList());
-        env.util.findSets(deck, Integer.MAX_VALUE).forEach(set -> {
+        List<int[]> sets;
+        synchronized (setsOnTable) {
+            sets = new ArrayList<int[]>(setsOnTable);
+        }
+        sets.forEach(set -> {
             StringBuilder sb = new StringBuilder().append("Hint: Set found: ");
             List<Integer> slots = Arrays.stream(set).mapToObj(card -> cardToSlot[card]).sorted().collect(Collectors.toList());
             int[][] features = env.util.cardsToFeatures(set);
@@ -115,8 +258,8 @@ public class Table {
      */
     public int countCards() {
         int cards = 0;
-        for (Integer card : slotToCard)
-            if (card != null)
+        for (int card : slotToCard)
+            if (card != -1)
                 ++cards;
         return cards;
     }
@@ -129,15 +272,63 @@ public class Table {
      * @post - the card placed is on the table, in the assigned slot.
      */
     public void placeCard(int card, int slot) {
+        tableDelay();
+
+        long stamp = cardsLock.writeLock();
+        try {
+            putCard(card, slot);
+        } finally {
+            cardsLock.unlockWrite(stamp);
+        }
+        ui.placeCard(card, slot);
+    }
+
+    /**
+     * Places several cards on the table at once, sleeping the table delay once for the whole batch.
+     * The table is marked as not ready while the cards are placed, and as ready once they all are
+     * (right away if there are none, since the refill is then complete).
+     * @param cards - the card ids to place.
+     * @param slots - the slots in which the cards should be placed (slots[i] for cards[i]).
+     * @param count - the number of cards to place.
+     *
+     * @post - the cards placed are on the table, in the assigned slots.
+     */
+    public void placeCards(int[] cards, int[] slots, int count) {
+        if (count == 0) {
+            setTableReady(true);
+            return;
+        }
+        setTableReady(false);
+        tableDelay();
+
+        long stamp = cardsLock.writeLock(); //readers see all the new cards or none of them
+        try {
+            for (int i = 0; i < count; i++)
+                putCard(cards[i], slots[i]);
+        } finally {
+            cardsLock.unlockWrite(stamp);
+        }
+        for (int i = 0; i < count; i++)
+            ui.placeCard(cards[i], slots[i]);
+        setTableReady(true);
+    }
+
+    /**
+     * Sleeps the table delay, if there is one (a zero delay skips the call to Thread.sleep altogether).
+     */
+    private void tableDelay() {
+        if (env.config.tableDelayMillis <= 0) return;
         try {
             Thread.sleep(env.config.tableDelayMillis);
         } catch (InterruptedException ignored) {}
+    }
 
+    private void putCard(int card, int slot) {
         cardToSlot[card] = slot;
         slotToCard[slot] = card;
-        env.ui.placeCard(card,slot);
-
-        // TODO implement
+        slotEpochs[slot]++;
+        journal.cardPlaced(card, slot);
+        indexCard(card, slot);
     }
 
     /**
@@ -145,14 +336,148 @@ public class Table {
      * @param slot - the slot from which to remove the card.
      */
     public void removeCard(int slot) {
+        tableDelay();
+
+        long stamp = cardsLock.writeLock();
         try {
-            Thread.sleep(env.config.tableDelayMillis);
-        } catch (InterruptedException ignored) {}
+            takeCard(slot);
+        } finally {
+            cardsLock.unlockWrite(stamp);
+        }
+        ui.removeCard(slot);
+    }
+
+    /**
+     * Removes the cards from several slots at once, sleeping the table delay once for the whole batch.
+     * The table is marked as not ready, and stays so until cards are placed again.
+     * @param slots - the slots from which to remove the cards.
+     * @param count - the number of slots.
+     */
+    public void removeCards(int[] slots, int count) {
+        if (count == 0) return;
+        setTableReady(false);
+        tableDelay();
+
+        long stamp = cardsLock.writeLock(); //readers see all the cards removed or none of them
+        try {
+            for (int i = 0; i < count; i++)
+                takeCard(slots[i]);
+        } finally {
+            cardsLock.unlockWrite(stamp);
+        }
+        for (int i = 0; i < count; i++)
+            ui.removeCard(slots[i]);
+    }
+
+    private void takeCard(int slot) {
         int card =  slotToCard[slot];
-        slotToCard[slot]=null;
-        cardToSlot[card]=null;
-        env.ui.removeCard(slot);
-        // TODO implement
+        unindexCard(card);
+        slotToCard[slot]=-1;
+        cardToSlot[card]=-1;
+        slotEpochs[slot]++;
+        journal.cardRemoved(card, slot);
+    }
+
+    /**
+     * Adds to the index all the sets a newly placed card completes with the cards already on the table.
+     * @param card - the card that was placed.
+     * @param slot - the slot the card was placed in.
+     */
+    private void indexCard(int card, int slot) {
+        synchronized (setsOnTable) {
+            if (cardFeatures.hasUniqueThirdCard()) { //each other card determines the only card completing the set
+                for (int other = 0; other < slotToCard.length; other++) {
+                    if (other == slot || slotToCard[other] == -1) continue;
+                    int third = cardFeatures.thirdCard(card, slotToCard[other]);
+                    if (third < 0 || cardToSlot[third] == -1) continue;
+                    int thirdSlot = cardToSlot[third];
+                    if (thirdSlot != slot && thirdSlot > other) //counts each pair only once
+                        addSet(card, slotToCard[other], third);
+                }
+            }
+            else {
+                for (int other = 0; other < slotToCard.length; other++) {
+                    if (other == slot || slotToCard[other] == -1) continue;
+                    for (int third = other + 1; third < slotToCard.length; third++) {
+                        if (third == slot || slotToCard[third] == -1) continue;
+                        if (cardFeatures.isSet(card, slotToCard[other], slotToCard[third]))
+                            addSet(card, slotToCard[other], slotToCard[third]);
+                    }
+                }
+            }
+        }
+    }
+
+    private void addSet(int first, int second, int third) {
+        int[] set = new int[]{first, second, third};
+        setsOnTable.add(set);
+        for (int card : set)
+            slotSetCount[cardToSlot[card]]++;
+    }
+
+    /**
+     * Removes from the index all the sets a card takes part in. Called before the card leaves the table.
+     * @param card - the card that is removed.
+     */
+    private void unindexCard(int card) {
+        synchronized (setsOnTable) {
+            Iterator<int[]> it = setsOnTable.iterator();
+            while (it.hasNext()) {
+                int[] set = it.next();
+                if (set[0] == card || set[1] == card || set[2] == card) {
+                    for (int setCard : set)
+                        slotSetCount[cardToSlot[setCard]]--;
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return - true iff there is at least one legal set on the table.
+     */
+    public boolean hasSet() {
+        synchronized (setsOnTable) {
+            return !setsOnTable.isEmpty();
+        }
+    }
+
+    /**
+     * @return - the number of legal sets on the table.
+     */
+    public int countSets() {
+        synchronized (setsOnTable) {
+            return setsOnTable.size();
+        }
+    }
+
+    /**
+     * @return - the card ids of one legal set on the table, or null if there is none.
+     */
+    public int[] anySet() {
+        synchronized (setsOnTable) {
+            return setsOnTable.isEmpty() ? null : setsOnTable.get(setsOnTable.size() - 1).clone();
+        }
+    }
+
+    /**
+     * @param random - chooses the set, so players with their own source of randomness go after different sets.
+     * @return       - the card ids of a random legal set on the table, or null if there is none.
+     */
+    public int[] anySet(Random random) {
+        synchronized (setsOnTable) {
+            return setsOnTable.isEmpty() ? null : setsOnTable.get(random.nextInt(setsOnTable.size())).clone();
+        }
+    }
+
+    /**
+     * @param slot - the slot to check.
+     * @return     - the number of legal sets on the table the card in the slot takes part in.
+     */
+    public int setsInSlot(int slot) {
+        synchronized (setsOnTable) {
+            return slotSetCount[slot];
+        }
     }
 
     /**
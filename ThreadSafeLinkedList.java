@@ -1,35 +1,134 @@
 package bguspl.set.ex;
 
-import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * The queue of sets submitted to the dealer: many players add, only the dealer takes.
+ * Lock-free: a submission is pushed onto a linked stack with a single CAS and never blocks the player,
+ * and the dealer takes the whole stack at once and restores the arrival order.
+ * A set is never cancelled on its own: one that went stale in the queue is rejected in O(1) when the dealer takes it
+ * (by its slot epochs, see Dealer), and a reshuffle drops all the pending sets at once.
+ */
 public class ThreadSafeLinkedList {
-    protected LinkedList<LinkPlayerSet> list;
 
-    public ThreadSafeLinkedList(){
-        this.list = new LinkedList<LinkPlayerSet>();
+    /**
+     * A submitted set waiting for the dealer.
+     */
+    static class Node {
+        final LinkPlayerSet link;
+        Node next;
+
+        Node(LinkPlayerSet link) {
+            this.link = link;
+        }
     }
 
+    /**
+     * The latest submission; each node points to the one submitted before it.
+     */
+    private final AtomicReference<Node> head;
+
+    /**
+     * The dealer's thread while it waits in awaitNonEmpty, otherwise null.
+     */
+    private volatile Thread waiter;
 
-    public synchronized boolean add(LinkPlayerSet newLink) {
-        return this.list.add(newLink);
+    /**
+     * True iff wakeUp was called and no awaitNonEmpty returned because of it yet.
+     */
+    private volatile boolean wokenUp;
+
+    public ThreadSafeLinkedList(){
+        this.head = new AtomicReference<Node>();
+        this.waiter = null;
+        this.wokenUp = false;
     }
 
-    public synchronized LinkPlayerSet removeFirst() {
-        return this.list.removeFirst();
+    /**
+     * Submits a set, waking the dealer if it waits. Never blocks.
+     * @param newLink - the submitted set.
+     * @return        - true.
+     */
+    public boolean add(LinkPlayerSet newLink) {
+        Node node = new Node(newLink);
+        Node first;
+        do {
+            first = this.head.get();
+            node.next = first;
+        } while (!this.head.compareAndSet(first, node));
+        Thread dealer = this.waiter;
+        if (dealer != null) LockSupport.unpark(dealer);
+        return true;
     }
 
-    public synchronized boolean remove(LinkPlayerSet removedLink) {
-        if (this.list.isEmpty() || !this.list.contains(removedLink)) return false;
-        return this.list.remove(removedLink);
+    /**
+     * Takes all the pending sets at once (called by the dealer only).
+     * @param into - the taken sets are appended to it, in arrival order.
+     * @return     - the number of sets taken.
+     */
+    public int drainTo(List<LinkPlayerSet> into) {
+        Node node = this.head.getAndSet(null);
+        Node reversed = null;
+        while (node != null) { //the stack holds the latest first
+            Node next = node.next;
+            node.next = reversed;
+            reversed = node;
+            node = next;
+        }
+        int taken = 0;
+        for (; reversed != null; reversed = reversed.next) {
+            into.add(reversed.link);
+            taken++;
+        }
+        return taken;
     }
 
-    public synchronized boolean removeAll() { //removes all players from this slot, removes their tokens from ui, and return their ids
-        if (list == null) return true;
-        this.list.clear();
+    /**
+     * Drops all the pending sets in O(1) (on a reshuffle).
+     */
+    public boolean removeAll() {
+        this.head.set(null);
         return true;
     }
 
-    public synchronized boolean isEmpty() {
-        return (list.peekFirst()==null);
+    /**
+     * @return - the number of pending sets (a snapshot, for monitoring).
+     */
+    public int size() {
+        int size = 0;
+        for (Node node = this.head.get(); node != null; node = node.next)
+            size++;
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return this.head.get() == null;
+    }
+
+    /**
+     * Blocks until a set is added or wakeUp is called (called by the dealer only).
+     */
+    public void awaitNonEmpty() throws InterruptedException {
+        this.waiter = Thread.currentThread();
+        try {
+            while (this.head.get() == null && !this.wokenUp) {
+                LockSupport.park(this);
+                if (Thread.interrupted()) throw new InterruptedException();
+            }
+        } finally {
+            this.waiter = null;
+        }
+        this.wokenUp = false;
+    }
+
+    /**
+     * Releases the dealer waiting in awaitNonEmpty even if no set was added (used on termination and by the countdown).
+     */
+    public void wakeUp() {
+        this.wokenUp = true;
+        Thread dealer = this.waiter;
+        if (dealer != null) LockSupport.unpark(dealer);
     }
 }
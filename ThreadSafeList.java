@@ -1,74 +1,119 @@
 package bguspl.set.ex;
 
-import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 
 import bguspl.set.Env;
+import bguspl.set.UserInterface;
 
+/**
+ * The tokens placed on a single slot, kept as an atomic bitmask of player ids (bit i is set iff player i has a token).
+ * The bitmask takes one word per 64 players, sized from the number of players in the configuration.
+ */
 public class ThreadSafeList {
 
-    protected ArrayList<Integer> list = new ArrayList<>();
-    private final Env env;
+    /**
+     * The number of players whose tokens are kept in a single word of the bitmask.
+     */
+    public static final int PLAYERS_PER_WORD = 64;
+
+    protected final AtomicLongArray tokens;
+
+    /**
+     * The number of times a token update failed its compare-and-set because of another player, and was retried.
+     */
+    protected final LongAdder casRetries = new LongAdder();
+    private final UserInterface ui;
+    private final GameJournal journal;
     private int slot;
 
-    public ThreadSafeList(Env _env, int _slot){
-        this.env = _env;
+    public ThreadSafeList(Env _env, UserInterface _ui, int _slot){
+        this(_env, _ui, _slot, GameJournal.DISABLED);
+    }
+
+    public ThreadSafeList(Env _env, UserInterface _ui, int _slot, GameJournal _journal){
+        this.journal = _journal;
+        this.tokens = new AtomicLongArray(Math.max(1, (_env.config.players + PLAYERS_PER_WORD - 1) / PLAYERS_PER_WORD));
+        this.ui = _ui;
         this.slot = _slot;
     }
 
 
-    public synchronized boolean add(int value) {
-        if (!list.contains(value)) { //EYTODO maybe change?
-            list.add(value);
-            env.ui.placeToken(value, this.slot);
-            return true;
+    public boolean add(int value) {
+        int word = value >>> 6;
+        long bit = 1L << value;
+        long current;
+        while (true) {
+            current = tokens.get(word);
+            if ((current & bit) != 0) return false;
+            if (tokens.compareAndSet(word, current, current | bit)) break;
+            casRetries.increment();
         }
-        return false;
+        journal.tokenPlaced(value, this.slot);
+        ui.placeToken(value, this.slot);
+        return true;
     }
 
-    public synchronized boolean remove(int value) {
-        if (list == null) return false;
-        boolean exists = list.remove(Integer.valueOf(value));
-        if(exists){
-            env.ui.removeToken(value, this.slot);
+    public boolean remove(int value) {
+        int word = value >>> 6;
+        long bit = 1L << value;
+        long current;
+        while (true) {
+            current = tokens.get(word);
+            if ((current & bit) == 0) return false;
+            if (tokens.compareAndSet(word, current, current & ~bit)) break;
+            casRetries.increment();
         }
-        return exists;
+        journal.tokenRemoved(value, this.slot);
+        ui.removeToken(value, this.slot);
+        return true;
     }
 
-    public synchronized int[] removeAll() { //removes all players from this slot, removes their tokens from ui, and return their ids
-        if (list == null) return null;
-
-        int[] players = new int[this.list.size()];
-        for(int i=0;i<players.length;i++){
-            players[i] = this.list.get(i).intValue();
-            env.ui.removeToken(players[i], this.slot);
+    public int removeAll() { //removes all players from this slot, removes their tokens from ui, and returns how many there were
+        int removed = 0;
+        for (int word = 0; word < tokens.length(); word++) {
+            for (long bits = tokens.getAndSet(word, 0); bits != 0; bits &= bits - 1) {
+                int player = (word << 6) + Long.numberOfTrailingZeros(bits);
+                journal.tokenRemoved(player, this.slot);
+                ui.removeToken(player, this.slot);
+                removed++;
+            }
         }
-        this.list.clear();
-        return players;
+        return removed;
     }
 
-    public synchronized boolean contains(int value) {
-        if (list == null) return false;
-        return list.contains(value);
+    public boolean contains(int value) {
+        return (tokens.get(value >>> 6) & (1L << value)) != 0;
     }
 
-    public synchronized int size() {
-        if (list == null) return -1;
-        return list.size();
+    public int size() {
+        int size = 0;
+        for (int word = 0; word < tokens.length(); word++)
+            size += Long.bitCount(tokens.get(word));
+        return size;
     }
 
-    public synchronized int[] getPlayers() { //TODO
-        int[] players = new int[this.list.size()];
-        for(int i=0;i<players.length;i++){
-            players[i] = this.list.get(i).intValue();
-        }
-        return players;
+    /**
+     * @return - the number of words in the bitmask.
+     */
+    public int words() {
+        return tokens.length();
+    }
+
+    /**
+     * @param word - the word of the bitmask, covering players 64 * word to 64 * word + 63.
+     * @return     - the bitmask of those players who have a token on this slot (bit i is player 64 * word + i).
+     */
+    public long getPlayers(int word) {
+        return tokens.get(word);
     }
 
     //EYTODO delete later, used for testing
     public void print() {
-        for(int i=0;i<this.list.size();i++){
-            System.out.println(this.list.get(i)); 
+        for (int word = 0; word < tokens.length(); word++) {
+            for (long bits = tokens.get(word); bits != 0; bits &= bits - 1) {
+                System.out.println((word << 6) + Long.numberOfTrailingZeros(bits));
+            }
         }
     }
 }
-
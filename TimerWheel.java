@@ -0,0 +1,216 @@
+package bguspl.set.ex;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * A hashed timer wheel: timed tasks are kept in buckets by their expiration tick, and a single thread
+ * advances the wheel and runs the tasks that expired. The thread sleeps until the next tick whose bucket is not empty
+ * (indefinitely while nothing is scheduled), and scheduling an earlier task wakes it. Tasks must be short, since they all run
+ * on the wheel's thread. Used for freezes, computer player pacing and the dealer's countdown,
+ * so game threads wait for events instead of sleeping.
+ */
+public class TimerWheel {
+
+    /**
+     * The default tick, which is also the granularity of all the timed events.
+     */
+    public static final long DEFAULT_TICK_MILLIS = 10;
+
+    /**
+     * The default number of buckets (a power of 2).
+     */
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    private static TimerWheel shared;
+
+    /**
+     * The value of sleepingUntil while the wheel's thread is awake.
+     */
+    private static final long AWAKE = -1;
+
+    /**
+     * A timed task scheduled on the wheel.
+     */
+    public static class Timeout {
+        private final Runnable task;
+        private final long deadlineTick;
+        private long expiresAt; //the tick the task runs on, set when it is put in its bucket
+        private volatile boolean cancelled;
+
+        private Timeout(Runnable task, long deadlineTick) {
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+            this.cancelled = false;
+        }
+
+        /**
+         * Prevents the task from running, if it did not run yet.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    private final long tickNanos;
+    private final ArrayList<Timeout>[] buckets;
+    private final int mask;
+
+    /**
+     * The number of timeouts in the buckets (used by the wheel's thread only).
+     */
+    private int size;
+
+    /**
+     * Timeouts scheduled since the last tick, moved into the buckets by the wheel's thread.
+     */
+    private final ConcurrentLinkedQueue<Timeout> pending;
+
+    /**
+     * The time the wheel started at, from which ticks are counted.
+     */
+    private final long startNanos;
+
+    /**
+     * The tick the wheel's thread sleeps until (Long.MAX_VALUE if nothing is scheduled), or AWAKE.
+     */
+    private volatile long sleepingUntil;
+
+    private final Thread worker;
+
+    /**
+     * Reports the tasks that failed.
+     */
+    private final Logger logger;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimerWheel(long tickMillis, int wheelSize, Logger logger) {
+        if (Integer.bitCount(wheelSize) != 1)
+            throw new IllegalArgumentException("wheel size must be a power of 2, got " + wheelSize);
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.buckets = new ArrayList[wheelSize];
+        for (int i = 0; i < wheelSize; i++)
+            buckets[i] = new ArrayList<Timeout>();
+        this.mask = wheelSize - 1;
+        this.pending = new ConcurrentLinkedQueue<Timeout>();
+        this.startNanos = System.nanoTime();
+        this.sleepingUntil = AWAKE;
+        this.logger = logger;
+
+        this.worker = new Thread(this::run, "timer-wheel");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * @param logger - reports the tasks that failed (the logger of the game that first uses the wheel).
+     * @return       - the timer wheel shared by all the games in this process.
+     */
+    public static synchronized TimerWheel shared(Logger logger) {
+        if (shared == null)
+            shared = new TimerWheel(DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE, logger);
+        return shared;
+    }
+
+    /**
+     * Schedules a task to run once, after the given delay (rounded up to whole ticks).
+     * @param delayMillis - the delay, in milliseconds.
+     * @param task        - the task to run on the wheel's thread.
+     * @return            - a handle that can cancel the task.
+     */
+    public Timeout schedule(long delayMillis, Runnable task) {
+        long deadlineNanos = System.nanoTime() - startNanos + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis));
+        long deadlineTick = (deadlineNanos + tickNanos - 1) / tickNanos;
+        Timeout timeout = new Timeout(task, deadlineTick);
+        pending.add(timeout);
+        if (deadlineTick < sleepingUntil) //the wheel's thread sleeps past the new task
+            LockSupport.unpark(worker);
+        return timeout;
+    }
+
+    /**
+     * The main loop of the wheel's thread.
+     */
+    private void run() {
+        long tick = 0; //the next tick to process
+        while (true) {
+            if (size == 0) //nothing is scheduled, so the ticks that passed meanwhile have nothing to run
+                tick = Math.max(tick, (System.nanoTime() - startNanos) / tickNanos);
+            transferPending(tick);
+            long due = nextDueTick(tick);
+            if (waitForTick(due)) {
+                expire(buckets[(int) (due & mask)], due);
+                tick = due + 1;
+            }
+        }
+    }
+
+    /**
+     * @param tick - the next tick to process.
+     * @return     - the first tick from the given one whose bucket is not empty, or Long.MAX_VALUE if all are.
+     */
+    private long nextDueTick(long tick) {
+        if (size == 0) return Long.MAX_VALUE;
+        for (int i = 0; i < buckets.length; i++) {
+            if (!buckets[(int) ((tick + i) & mask)].isEmpty())
+                return tick + i;
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Sleeps until the given tick starts, or until a task is scheduled.
+     * @param due - the tick to wait for, or Long.MAX_VALUE to wait for a task only.
+     * @return    - true iff the tick started.
+     */
+    private boolean waitForTick(long due) {
+        sleepingUntil = due;
+        try {
+            while (true) {
+                long remaining = due == Long.MAX_VALUE ? Long.MAX_VALUE : startNanos + due * tickNanos - System.nanoTime();
+                if (remaining <= 0) return true;
+                if (!pending.isEmpty()) return false;
+                if (remaining == Long.MAX_VALUE)
+                    LockSupport.park(this);
+                else
+                    LockSupport.parkNanos(this, remaining);
+            }
+        } finally {
+            sleepingUntil = AWAKE;
+        }
+    }
+
+    private void transferPending(long tick) {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (timeout.cancelled) continue;
+            timeout.expiresAt = Math.max(timeout.deadlineTick, tick); //a late timeout runs on the next tick
+            buckets[(int) (timeout.expiresAt & mask)].add(timeout);
+            size++;
+        }
+    }
+
+    private void expire(ArrayList<Timeout> bucket, long tick) {
+        Iterator<Timeout> it = bucket.iterator();
+        while (it.hasNext()) {
+            Timeout timeout = it.next();
+            if (timeout.cancelled) {
+                it.remove();
+                size--;
+            }
+            else if (timeout.expiresAt <= tick) { //otherwise it is due on a later round of the wheel
+                it.remove();
+                size--;
+                try {
+                    timeout.task.run();
+                } catch (RuntimeException e) {
+                    logger.warning("a timer task failed: " + e); //a failing task must not stop the wheel
+                }
+            }
+        }
+    }
+}
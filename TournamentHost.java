@@ -0,0 +1,131 @@
+package bguspl.set.ex;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import bguspl.set.Env;
+
+/**
+ * Runs a batch of independent games of computer players in one process, without a window.
+ * Games are queued on a fixed pool of workers sized from the number of cores: each worker is the dealer thread of
+ * the game it runs, and only that many games run at once. The players are not multiplexed on the pool: a running game
+ * still starts a platform thread for each of its players (their computer player runs inline on it), so the threads alive
+ * at any time are about workers * (players + 2), bounded by the pool size rather than by the number of games.
+ * If a game fails, the games not finished yet are cancelled and the failure is reported.
+ * Every game has its own table, dealer and players; only the configuration and the timer wheel are shared.
+ *
+ * Usage: TournamentHost [games] [players] [workers] [config.properties]
+ * (see HeadlessSimulation for the computer players' strategy properties)
+ */
+public class TournamentHost {
+
+    /**
+     * The results of a single game.
+     */
+    private static class GameResult {
+        final LatencyHistogram verdictLatency;
+        final long correctSets;
+
+        GameResult(LatencyHistogram verdictLatency, long correctSets) {
+            this.verdictLatency = verdictLatency;
+            this.correctSets = correctSets;
+        }
+    }
+
+    private final Env env;
+    private final int games;
+    private final int playersCount;
+    private final ExecutorService pool;
+    private final Supplier<AIStrategy> strategies;
+
+    public TournamentHost(int games, int playersCount, int workers, Properties properties) {
+        this.env = HeadlessSimulation.createEnv(playersCount, properties);
+        this.strategies = HeadlessSimulation.strategies(properties);
+        this.games = games;
+        this.playersCount = playersCount;
+        AtomicInteger nextWorker = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(workers, task -> new Thread(task, "game-worker-" + nextWorker.getAndIncrement()));
+    }
+
+    private GameResult playGame() {
+        Player[] players = new Player[playersCount];
+        Table table = HeadlessSimulation.playGame(env, players, strategies);
+        long correctSets = 0;
+        for (Player player : players)
+            correctSets += player.score();
+        return new GameResult(table.metrics.verdictLatency, correctSets);
+    }
+
+    /**
+     * Runs all the games and prints the aggregate results.
+     */
+    public void run() throws InterruptedException, ExecutionException {
+        List<GameResult> results = new ArrayList<GameResult>(games);
+        long start = System.nanoTime();
+        try {
+            List<Future<GameResult>> futures = new ArrayList<Future<GameResult>>(games);
+            for (int game = 0; game < games; game++)
+                futures.add(pool.submit(this::playGame));
+            try {
+                for (Future<GameResult> future : futures)
+                    results.add(future.get());
+            } catch (ExecutionException | InterruptedException e) {
+                for (Future<GameResult> future : futures)
+                    future.cancel(true); //games still queued never start
+                pool.shutdownNow();
+                throw e;
+            }
+        } finally {
+            pool.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        LatencyHistogram verdictLatency = new LatencyHistogram();
+        long correctSets = 0;
+        long[] gameP99 = new long[results.size()];
+        for (int i = 0; i < gameP99.length; i++) {
+            GameResult result = results.get(i);
+            verdictLatency.add(result.verdictLatency);
+            correctSets += result.correctSets;
+            gameP99[i] = result.verdictLatency.percentile(99);
+        }
+        Arrays.sort(gameP99);
+
+        long judged = verdictLatency.count();
+        System.out.printf("games: %d, players per game: %d, time: %.2f s, peak threads: %d%n",
+                games, playersCount, seconds, ManagementFactory.getThreadMXBean().getPeakThreadCount());
+        System.out.printf("games/sec: %.2f%n", games / seconds);
+        System.out.printf("sets judged/sec: %.1f (%d judged, %d correct)%n", judged / seconds, judged, correctSets);
+        System.out.printf("submit-to-verdict latency (us): p50 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n",
+                verdictLatency.percentile(50) / 1e3, verdictLatency.percentile(99) / 1e3,
+                verdictLatency.percentile(99.9) / 1e3, verdictLatency.max() / 1e3);
+        if (gameP99.length > 0)
+            System.out.printf("per-game p99 latency (us): median %.1f, worst %.1f%n",
+                    gameP99[gameP99.length / 2] / 1e3, gameP99[gameP99.length - 1] / 1e3);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int playersCount = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int workers = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        Properties properties = new Properties();
+        if (args.length > 3) {
+            try (InputStream is = new FileInputStream(args[3])) {
+                properties.load(is);
+            }
+        }
+        new TournamentHost(games, playersCount, workers, properties).run();
+    }
+}
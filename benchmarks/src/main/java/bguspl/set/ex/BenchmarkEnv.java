@@ -0,0 +1,38 @@
+package bguspl.set.ex;
+
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.UtilImpl;
+
+/**
+ * Builds the game environment used by the benchmarks: no window and no delays.
+ */
+final class BenchmarkEnv {
+
+    private BenchmarkEnv() {}
+
+    static Env create(int players) {
+        return create(players, 3, 4);
+    }
+
+    static Env create(int players, int rows, int columns) {
+        Properties properties = new Properties();
+        properties.setProperty("HumanPlayers", "0");
+        properties.setProperty("ComputerPlayers", Integer.toString(players));
+        properties.setProperty("TableDelaySeconds", "0");
+        properties.setProperty("PointFreezeSeconds", "0");
+        properties.setProperty("PenaltyFreezeSeconds", "0");
+        properties.setProperty("Hints", "false");
+        properties.setProperty("Rows", Integer.toString(rows));
+        properties.setProperty("Columns", Integer.toString(columns));
+
+        Logger logger = Logger.getLogger(BenchmarkEnv.class.getName());
+        logger.setLevel(Level.WARNING);
+        Config config = new Config(logger, properties);
+        return new Env(logger, config, new NullUserInterface(), new UtilImpl(config));
+    }
+}
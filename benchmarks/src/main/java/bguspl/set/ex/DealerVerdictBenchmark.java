@@ -0,0 +1,120 @@
+package bguspl.set.ex;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bguspl.set.Env;
+
+/**
+ * The dealer judging submitted sets in removeCardsFromTable, on a full table.
+ * A wrong set leaves the table as is; a correct set removes its cards, which are then placed back.
+ * The sets are built once per iteration and each invocation queues them again, as the players would,
+ * so the measured time is queueing and judging the sets (no per-invocation setup, and no table delay).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DealerVerdictBenchmark {
+
+    @Param({"1", "8"})
+    public int pending;
+
+    private Table table;
+    private Dealer dealer;
+    private Player[] players;
+    private int[] correctCards;
+    private int[] correctSlots;
+    private int[] wrongCards;
+
+    @Setup
+    public void setup() {
+        Env env = BenchmarkEnv.create(pending);
+        table = new Table(env);
+        players = new Player[pending];
+        dealer = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, dealer, table, i, false);
+
+        int[] slots = new int[table.slotToCard.length];
+        for (int slot = 0; slot < slots.length; slot++)
+            slots[slot] = slot;
+        int[] cards = new int[slots.length];
+        int count = 0;
+        for (int card = 0; card < table.cardToSlot.length && count < cards.length; card++)
+            cards[count++] = card;
+        table.placeCards(cards, slots, count);
+
+        correctCards = table.anySet();
+        correctSlots = new int[3];
+        for (int i = 0; i < 3; i++)
+            correctSlots[i] = table.cardToSlot[correctCards[i]];
+        wrongCards = findWrongSet();
+    }
+
+    private int[] findWrongSet() {
+        for (int a = 0; a < table.slotToCard.length; a++)
+            for (int b = a + 1; b < table.slotToCard.length; b++)
+                for (int c = b + 1; c < table.slotToCard.length; c++)
+                    if (!table.cardFeatures.isSet(table.slotToCard[a], table.slotToCard[b], table.slotToCard[c]))
+                        return new int[]{table.slotToCard[a], table.slotToCard[b], table.slotToCard[c]};
+        throw new IllegalStateException("every 3 cards on the table form a set");
+    }
+
+    @Setup(Level.Iteration)
+    public void buildSets() {
+        for (Player player : players)
+            build(player.playerSingleLink, wrongCards);
+    }
+
+    /**
+     * Queues the sets built for this iteration, as Player.sendSetCards does.
+     */
+    private void submit() {
+        for (Player player : players) {
+            player.wasCorrect = -1;
+            table.finishedPlayerSets.add(player.playerSingleLink);
+        }
+    }
+
+    /**
+     * Builds a set from the cards on the table, as Player.sendSetCards does.
+     */
+    private void build(LinkPlayerSet link, int[] cards) {
+        link.cards = cards;
+        for (int i = 0; i < cards.length; i++) {
+            link.slots[i] = table.cardToSlot[cards[i]];
+            link.epochs[i] = table.slotEpochs[link.slots[i]];
+        }
+        link.validate(table.cardFeatures);
+    }
+
+    @Benchmark
+    public void wrongSets() {
+        submit();
+        dealer.removeCardsFromTable();
+    }
+
+    @Benchmark
+    public void correctSet() {
+        for (int i = 0; i < players.length; i++) //placing the cards back made the previous epochs stale
+            build(players[i].playerSingleLink, i == 0 ? correctCards : wrongCards);
+        submit();
+        dealer.removeCardsFromTable();
+        table.placeCards(correctCards, correctSlots, 3);
+    }
+}
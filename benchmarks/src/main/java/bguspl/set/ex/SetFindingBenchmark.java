@@ -0,0 +1,75 @@
+package bguspl.set.ex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bguspl.set.Env;
+
+/**
+ * Finding sets in a full or partial deck: env.util.findSets against the deck oracle.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SetFindingBenchmark {
+
+    /**
+     * The number of cards left in the deck.
+     */
+    @Param({"81", "40", "20", "12"})
+    public int cards;
+
+    private Env env;
+    private CardFeatures cardFeatures;
+    private List<Integer> deck;
+    private int[] removedCards;
+
+    @Setup
+    public void setup() {
+        env = BenchmarkEnv.create(1);
+        cardFeatures = new CardFeatures(env);
+        List<Integer> all = new ArrayList<Integer>();
+        for (int card = 0; card < env.config.deckSize; card++)
+            all.add(card);
+        Collections.shuffle(all, new Random(0));
+        deck = new ArrayList<Integer>(all.subList(0, Math.min(cards, all.size())));
+        List<Integer> removed = all.subList(deck.size(), all.size());
+        removedCards = removed.stream().mapToInt(i -> i).toArray();
+    }
+
+    @Benchmark
+    public int findFirstSet() {
+        return env.util.findSets(deck, 1).size();
+    }
+
+    @Benchmark
+    public int findAllSets() {
+        return env.util.findSets(deck, Integer.MAX_VALUE).size();
+    }
+
+    @Benchmark
+    public boolean deckOracle() {
+        DeckOracle oracle = new DeckOracle(cardFeatures, env.config.deckSize);
+        for (int card : removedCards)
+            oracle.removeCard(card);
+        return oracle.hasSet();
+    }
+}
@@ -0,0 +1,69 @@
+package bguspl.set.ex;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Players placing and removing tokens on random slots of a shared table.
+ * Run with -t 1, 4, 16 and 64 to see the contention (see ContentionRunner).
+ * The large layout is a 9x9 table shared by 128 players.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TableTokenBenchmark {
+
+    @Param({"3x4", "9x9"})
+    public String layout;
+
+    private Table table;
+
+    private int players;
+
+    private int tableSize;
+
+    private final AtomicInteger nextPlayer = new AtomicInteger();
+
+    @Setup
+    public void setup() {
+        String[] size = layout.split("x");
+        int rows = Integer.parseInt(size[0]);
+        int columns = Integer.parseInt(size[1]);
+        players = rows * columns > 12 ? 128 : 64;
+        table = new Table(BenchmarkEnv.create(players, rows, columns));
+        tableSize = table.slotToCard.length;
+    }
+
+    @State(Scope.Thread)
+    public static class PlayerState {
+        int player;
+
+        @Setup
+        public void setup(TableTokenBenchmark benchmark) {
+            player = benchmark.nextPlayer.getAndIncrement() % benchmark.players;
+        }
+    }
+
+    @Benchmark
+    public boolean placeRemoveToken(PlayerState state) {
+        int slot = ThreadLocalRandom.current().nextInt(tableSize);
+        table.placeToken(state.player, slot);
+        return table.removeToken(state.player, slot);
+    }
+}
@@ -0,0 +1,105 @@
+package bguspl.set.ex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The queue of submitted sets, on the paths the game uses: players adding their sets while the dealer
+ * takes them, or while the dealer drops them all on a reshuffle. The players back off while MAX_QUEUED sets wait (a rejected submission still counts as an operation),
+ * so a dealer that gets less CPU than the players cannot let the queue grow without bound.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class ThreadSafeLinkedListBenchmark {
+
+    private static final int MAX_QUEUED = 1024;
+
+    private ThreadSafeLinkedList queue;
+
+    /**
+     * At least the number of sets in the queue: the dealer resets it before it empties the queue.
+     */
+    private AtomicInteger queued;
+
+    @Setup
+    public void setup() {
+        queue = new ThreadSafeLinkedList();
+        queued = new AtomicInteger();
+    }
+
+    @State(Scope.Thread)
+    public static class LinkState {
+        LinkPlayerSet link;
+
+        @Setup
+        public void setup() {
+            link = new LinkPlayerSet(new int[]{0, 1, 2}, null);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class DealerState {
+        final List<LinkPlayerSet> batch = new ArrayList<LinkPlayerSet>();
+    }
+
+    @Benchmark
+    @Group("submitDrain")
+    @GroupThreads(7)
+    public boolean submitDrainPlayers(LinkState state) {
+        return submit(state);
+    }
+
+    @Benchmark
+    @Group("submitDrain")
+    @GroupThreads(1)
+    public int submitDrainDealer(DealerState state) {
+        queued.set(0); //sets added from here on are either taken now or counted
+        int taken = queue.drainTo(state.batch);
+        state.batch.clear();
+        return taken;
+    }
+
+    @Benchmark
+    @Group("reshuffle")
+    @GroupThreads(7)
+    public boolean reshufflePlayers(LinkState state) {
+        return submit(state);
+    }
+
+    @Benchmark
+    @Group("reshuffle")
+    @GroupThreads(1)
+    public boolean reshuffleDealer() {
+        queued.set(0); //sets added from here on are either dropped now or counted
+        return queue.removeAll();
+    }
+
+    private boolean submit(LinkState state) {
+        if (queued.get() >= MAX_QUEUED) {
+            Thread.yield(); //let the dealer run
+            return false;
+        }
+        queue.add(state.link);
+        queued.incrementAndGet();
+        return true;
+    }
+}
@@ -0,0 +1,69 @@
+package bguspl.set.ex;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Tokens on a single slot, with every benchmark thread acting as a different player.
+ * Run with -t 1, 4, 16 and 64 to see the contention (see ContentionRunner).
+ * With more than 64 players the bitmask spans several words.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ThreadSafeListBenchmark {
+
+    @Param({"64", "128"})
+    public int players;
+
+    private ThreadSafeList slot;
+
+    private final AtomicInteger nextPlayer = new AtomicInteger();
+
+    @Setup
+    public void setup() {
+        slot = new ThreadSafeList(BenchmarkEnv.create(players), new NullUserInterface(), 0);
+    }
+
+    @State(Scope.Thread)
+    public static class PlayerState {
+        int player;
+
+        @Setup
+        public void setup(ThreadSafeListBenchmark benchmark) {
+            player = benchmark.nextPlayer.getAndIncrement() % benchmark.players;
+        }
+    }
+
+    @Benchmark
+    public boolean addRemove(PlayerState state) {
+        slot.add(state.player);
+        return slot.remove(state.player);
+    }
+
+    @Benchmark
+    public long getPlayers(PlayerState state) {
+        return slot.getPlayers(state.player / ThreadSafeList.PLAYERS_PER_WORD);
+    }
+
+    @Benchmark
+    public int addRemoveAll(PlayerState state) {
+        slot.add(state.player);
+        return slot.removeAll();
+    }
+}
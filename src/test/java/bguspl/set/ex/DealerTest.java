@@ -0,0 +1,85 @@
+package bguspl.set.ex;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Properties;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import bguspl.set.Env;
+
+class DealerTest {
+
+    private Table table;
+    private Dealer dealer;
+    private Player[] players;
+
+    @BeforeEach
+    void setUp() {
+        Env env = HeadlessSimulation.createEnv(2, new Properties());
+        table = new Table(env);
+        players = new Player[2];
+        dealer = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, dealer, table, i, false); //the players' threads are never started
+
+        int[] cards = new int[table.slotToCard.length];
+        int[] slots = new int[table.slotToCard.length];
+        for (int slot = 0; slot < slots.length; slot++) {
+            cards[slot] = slot;
+            slots[slot] = slot;
+            dealer.deck.take(slot);
+        }
+        table.placeCards(cards, slots, slots.length);
+    }
+
+    @AfterEach
+    void tearDown() {
+        table.ui.stop();
+    }
+
+    /**
+     * Queues a set as Player.sendSetCards does.
+     */
+    private void submit(Player player, int[] cards) {
+        LinkPlayerSet link = player.playerSingleLink;
+        for (int i = 0; i < cards.length; i++) {
+            link.slots[i] = table.cardToSlot[cards[i]];
+            link.epochs[i] = table.slotEpochs[link.slots[i]];
+            table.placeToken(player.id, link.slots[i]);
+            player.placed_tokens[link.slots[i]] = true;
+        }
+        player.tokensLeft = 0;
+        player.status = 2;
+        link.cards = cards;
+        link.validate(table.cardFeatures);
+        player.wasCorrect = -1;
+        table.finishedPlayerSets.add(link);
+    }
+
+    @Test
+    void pointSurvivesReshuffleRightAfterTheVerdict() {
+        submit(players[0], table.anySet());
+
+        dealer.removeCardsFromTable();
+        dealer.removeAllCardsFromTable(); //e.g. the last set on the table was taken, before the winner woke up
+
+        players[0].playerSingleLink.awaitVerdict();
+        assertEquals(1, players[0].wasCorrect);
+        players[0].point();
+        assertEquals(1, players[0].score());
+    }
+
+    @Test
+    void reshuffleInvalidatesPendingSets() {
+        submit(players[1], table.anySet());
+
+        dealer.removeAllCardsFromTable();
+
+        players[1].playerSingleLink.awaitVerdict();
+        assertEquals(-2, players[1].wasCorrect);
+        assertEquals(0, players[1].score());
+    }
+}